@@ -0,0 +1,37 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Deterministic keys for the benchmarks, built from BigInteger.probablePrime
+ * so that setting up a 4096-bit key doesn't dominate a trial
+ */
+class BenchmarkKeys {
+
+    /**
+     * @param modulusBits - bit length of n
+     * @return CRT key pair with e = 65537
+     */
+    static RSA key(int modulusBits)
+    {
+        Random random = new Random(modulusBits);
+        BigInteger e = KeyGenerator.DEFAULT_PUBLIC_EXPONENT;
+        BigInteger p = prime(modulusBits / 2, e, random);
+        BigInteger q = prime(modulusBits / 2, e, random);
+        while (q.equals(p)) {
+            q = prime(modulusBits / 2, e, random);
+        }
+        return new RSA(p, q, e);
+    }
+
+    private static BigInteger prime(int bits, BigInteger e, Random random)
+    {
+        while (true) {
+            BigInteger p = BigInteger.probablePrime(bits, random);
+            if (p.subtract(BigInteger.ONE).gcd(e).equals(BigInteger.ONE)) {
+                return p;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Slicing messages into blocks, without any modexp
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingBenchmark {
+
+    @Param({"2048"})
+    public int keyBits;
+
+    @Param({"65536", "1048576"})
+    public int messageBytes;
+
+    private RSA rsa;
+    private byte[] message;
+    private List<String> lines;
+
+    @Setup
+    public void setup()
+    {
+        rsa = BenchmarkKeys.key(keyBits);
+        Random random = new Random(messageBytes);
+        StringBuilder text = new StringBuilder(messageBytes);
+        lines = new ArrayList<String>();
+        while (text.length() < messageBytes) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < 80; i++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            lines.add(line.toString());
+            text.append(line).append('\n');
+        }
+        message = text.substring(0, messageBytes).getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public List<BigInteger> bytes(BytesCounter counter)
+    {
+        counter.bytes += message.length;
+        return rsa.getValidEncryptionBlocks(message);
+    }
+
+    @Benchmark
+    public List<BigInteger> lines(BytesCounter counter)
+    {
+        counter.bytes += message.length;
+        return rsa.getValidEncryptionBlocks(lines);
+    }
+}
@@ -0,0 +1,24 @@
+package srcs;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Adds a bytes/s column to throughput benchmarks: a benchmark method takes
+ * it as a parameter and adds the bytes it processed
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class BytesCounter {
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+        bytes = 0;
+    }
+}
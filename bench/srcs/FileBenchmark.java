@@ -0,0 +1,84 @@
+package srcs;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and writing decimal block files, without any modexp
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileBenchmark {
+
+    @Param({"2048"})
+    public int blockBits;
+
+    @Param({"1000"})
+    public int blocks;
+
+    private Path directory;
+    private String readPath;
+    private String writePath;
+    private List<BigInteger> values;
+    private long fileBytes;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Random random = new Random(blocks);
+        values = new ArrayList<BigInteger>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            values.add(new BigInteger(blockBits, random));
+        }
+        directory = Files.createTempDirectory("rsa-bench");
+        readPath = directory.resolve("blocks.txt").toString();
+        writePath = directory.resolve("written.txt").toString();
+        RSA.writeBigIntegerToFile(values, readPath);
+        fileBytes = Files.size(directory.resolve("blocks.txt"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(directory.resolve("blocks.txt"));
+        Files.deleteIfExists(directory.resolve("written.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<BigInteger> readFromFile(BytesCounter counter)
+    {
+        counter.bytes += fileBytes;
+        return RSA.readFromFile(readPath);
+    }
+
+    @Benchmark
+    public void writeBigIntegerToFile(BytesCounter counter)
+    {
+        counter.bytes += fileBytes;
+        RSA.writeBigIntegerToFile(values, writePath);
+    }
+}
@@ -0,0 +1,88 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Prime search and per-key setup. Prime search time varies a lot from one
+ * candidate to the next, so it is sampled as single shots over many
+ * iterations rather than measured as throughput
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGenerationBenchmark {
+
+    /** Size of the prime for primeGeneration, of the modulus for the per-key setup */
+    @Param({"1024", "2048", "4096"})
+    public int bits;
+
+    private BigInteger e;
+    private BigInteger phi;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(bits);
+        e = KeyGenerator.DEFAULT_PUBLIC_EXPONENT;
+        do {
+            BigInteger p = BigInteger.probablePrime(bits / 2, random);
+            BigInteger q = BigInteger.probablePrime(bits / 2, random);
+            phi = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE));
+        } while (!phi.gcd(e).equals(BigInteger.ONE));
+    }
+
+    /**
+     * One prime of the given size, as Main.generateKey does for p and q
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 30)
+    public BigInteger primeGeneration()
+    {
+        return Utils.primeGeneration(bits);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public BigInteger calculateD()
+    {
+        return Utils.calculateD(e, phi);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public BigInteger modInverse()
+    {
+        return e.modInverse(phi);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public BigInteger eGeneration()
+    {
+        return Utils.eGeneration(phi);
+    }
+}
@@ -0,0 +1,109 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Utils#powerMod(BigInteger, BigInteger, BigInteger)} and the cached
+ * {@link Montgomery} contexts against BigInteger.modPow, with a full-size
+ * exponent and with e = 65537. The interleaved benchmarks exponentiate
+ * {@link Montgomery#LANES} bases per call, compare their throughput divided
+ * by the lanes with the scalar one
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModExpBenchmark {
+
+    @Param({"1024", "2048", "4096"})
+    public int bits;
+
+    private BigInteger modulus;
+    private BigInteger base;
+    private BigInteger[] bases;
+    private BigInteger exponent;
+    private BigInteger shortExponent;
+    private Montgomery context;
+    private SlidingWindow window;
+    private SlidingWindow shortWindow;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(bits);
+        modulus = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+        base = new BigInteger(bits - 1, random);
+        bases = new BigInteger[Montgomery.LANES];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = new BigInteger(bits - 1, random);
+        }
+        exponent = new BigInteger(bits - 1, random);
+        shortExponent = KeyGenerator.DEFAULT_PUBLIC_EXPONENT;
+        context = new Montgomery(modulus);
+        window = new SlidingWindow(exponent);
+        shortWindow = new SlidingWindow(shortExponent);
+    }
+
+    @Benchmark
+    public BigInteger powerMod()
+    {
+        return Utils.powerMod(base, exponent, modulus);
+    }
+
+    @Benchmark
+    public BigInteger montgomeryCached()
+    {
+        return context.modPow(base, window);
+    }
+
+    @Benchmark
+    public BigInteger[] montgomeryInterleaved()
+    {
+        return context.modPow(bases, window);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerModPow()
+    {
+        return base.modPow(exponent, modulus);
+    }
+
+    @Benchmark
+    public BigInteger powerModF4()
+    {
+        return Utils.powerMod(base, shortExponent, modulus);
+    }
+
+    @Benchmark
+    public BigInteger montgomeryCachedF4()
+    {
+        return context.modPow(base, shortWindow);
+    }
+
+    @Benchmark
+    public BigInteger[] montgomeryInterleavedF4()
+    {
+        return context.modPow(bases, shortWindow);
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerModPowF4()
+    {
+        return base.modPow(shortExponent, modulus);
+    }
+}
@@ -0,0 +1,155 @@
+package srcs;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end throughput: single-block operations, and whole files through
+ * every format (decimal text, binary container, hybrid, digest signature)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RsaBenchmark {
+
+    @Param({"2048"})
+    public int keyBits;
+
+    @Param({"1048576"})
+    public int fileBytes;
+
+    private RSA rsa;
+    private BigInteger block;
+    private BigInteger encrypted;
+    private BigInteger signed;
+
+    private Path directory;
+    private String plainPath;
+    private String textPath;
+    private String binaryPath;
+    private String hybridPath;
+    private String digestPath;
+    private String outputPath;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        rsa = BenchmarkKeys.key(keyBits);
+        rsa.setBlockEngine(new BlockEngine());
+        Random random = new Random(keyBits);
+        block = new BigInteger(keyBits - 8, random);
+        encrypted = rsa.encrypt(block);
+        signed = rsa.sign(block);
+
+        directory = Files.createTempDirectory("rsa-bench");
+        byte[] content = new byte[fileBytes];
+        random.nextBytes(content);
+        plainPath = Files.write(directory.resolve("plain.bin"), content).toString();
+        textPath = directory.resolve("plain.txt.enc").toString();
+        binaryPath = directory.resolve("plain.bin.enc").toString();
+        hybridPath = directory.resolve("plain.hybrid.enc").toString();
+        digestPath = directory.resolve("plain.sig").toString();
+        outputPath = directory.resolve("plain.out").toString();
+        rsa.encryptFile(plainPath, textPath, false);
+        rsa.encryptFile(plainPath, binaryPath, true);
+        rsa.encryptFileHybrid(plainPath, hybridPath);
+        rsa.signFileDigest(plainPath, digestPath, DigestSignature.SHA256);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        for (String path : new String[] {plainPath, textPath, binaryPath, hybridPath, digestPath, outputPath}) {
+            Files.deleteIfExists(Path.of(path));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public BigInteger encryptBlock()
+    {
+        return rsa.encrypt(block);
+    }
+
+    @Benchmark
+    public BigInteger decryptBlock()
+    {
+        return rsa.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public BigInteger signBlock()
+    {
+        return rsa.sign(block);
+    }
+
+    @Benchmark
+    public BigInteger verifyBlock()
+    {
+        return rsa.Verify(signed);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 3, time = 10)
+    public long encryptFileText(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        return rsa.encryptFile(plainPath, outputPath, false);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 3, time = 10)
+    public long decryptFileBinary(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        return rsa.decryptFile(binaryPath, outputPath);
+    }
+
+    @Benchmark
+    public long encryptFileHybrid(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        return rsa.encryptFileHybrid(plainPath, outputPath);
+    }
+
+    @Benchmark
+    public long decryptFileHybrid(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        return rsa.decryptFile(hybridPath, outputPath);
+    }
+
+    @Benchmark
+    public void signFileDigest(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        rsa.signFileDigest(plainPath, outputPath, DigestSignature.SHA256);
+    }
+
+    @Benchmark
+    public boolean verifyFileDigest(BytesCounter counter) throws IOException
+    {
+        counter.bytes += fileBytes;
+        return rsa.verifyFileDigest(plainPath, digestPath);
+    }
+}
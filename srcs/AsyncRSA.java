@@ -0,0 +1,362 @@
+package srcs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade over {@link RSA}
+ *
+ * Block operations run on a fixed pool of CPU threads, one per core by
+ * default. File operations run on virtual threads when the JVM has them
+ * (Java 21 and later) and on a cached pool of daemon threads otherwise; the
+ * blocks of a file go through the {@link BlockEngine} of the wrapped RSA
+ * when it has one. The reader and the writer of a file's {@link BlockPipeline}
+ * run on the same executor, so with virtual threads a file operation holds
+ * no platform thread while it waits. The cached pool reuses its threads but
+ * holds three of them per running file operation, so keep maxInFlight
+ * moderate for file operations before Java 21.
+ *
+ * A semaphore bounds the operations in flight: once
+ * <code>maxInFlight</code> are queued or running, submitting blocks the
+ * caller until one completes. The permit is released before the future
+ * completes, and a stage chained on a future (thenCompose and the like)
+ * that submits again from one of the threads of the same facade never
+ * blocks: it takes a free permit if there is one and runs unbounded
+ * otherwise, so chained operations cannot deadlock the pools.
+ *
+ * Cancelling a future skips the operation if it has not started yet and
+ * interrupts the thread of a running file operation, which closes its
+ * channels and stops its pipeline threads; a running block operation
+ * completes but its result is dropped. A future always completes, with the
+ * Error of the operation too.
+ */
+public class AsyncRSA implements AutoCloseable {
+
+    private final RSA rsa;
+    private final ExecutorService cpu;
+    private final ExecutorService io;
+    private final Semaphore inFlight;
+    private final boolean virtualThreads;
+
+    /**
+     * Set on the threads running operations of this facade, submitting from them must not block
+     */
+    private final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * Facade with one CPU thread per core and at most 1024 operations in
+     * flight, unless overridden by the <code>rsa.parallelism</code> and
+     * <code>rsa.async.maxInFlight</code> system properties
+     *
+     * @param rsa - its keys, block engine and modexp backend are taken over, later changes to it are not seen
+     */
+    public AsyncRSA(RSA rsa)
+    {
+        this(rsa, Integer.getInteger("rsa.parallelism", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("rsa.async.maxInFlight", 1024));
+    }
+
+    /**
+     * @param rsa - its keys, block engine and modexp backend are taken over, later changes to it are not seen
+     * @param parallelism - number of CPU threads
+     * @param maxInFlight - operations queued or running before submitting blocks
+     */
+    public AsyncRSA(RSA rsa, int parallelism, int maxInFlight)
+    {
+        if (parallelism < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Parallelism and in-flight limit must be positive");
+        }
+        cpu = Executors.newFixedThreadPool(parallelism, daemonThreads("rsa-async-cpu-"));
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        io = virtualThreads ? virtual : Executors.newCachedThreadPool(daemonThreads("rsa-async-io-"));
+        inFlight = new Semaphore(maxInFlight);
+        this.rsa = rsa.withPipelineExecutor(this::runStage);
+    }
+
+    /**
+     * @return <code>true</code> if file operations run on virtual threads
+     */
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * @return operations that can still be submitted without blocking
+     */
+    public int getAvailablePermits()
+    {
+        return inFlight.availablePermits();
+    }
+
+    /**
+     * @see RSA#encrypt(BigInteger)
+     */
+    public CompletableFuture<BigInteger> encryptAsync(BigInteger message)
+    {
+        return submit(cpu, () -> rsa.encrypt(message));
+    }
+
+    /**
+     * @see RSA#decrypt(BigInteger)
+     */
+    public CompletableFuture<BigInteger> decryptAsync(BigInteger encrypted)
+    {
+        return submit(cpu, () -> rsa.decrypt(encrypted));
+    }
+
+    /**
+     * @see RSA#sign(BigInteger)
+     */
+    public CompletableFuture<BigInteger> signAsync(BigInteger message)
+    {
+        return submit(cpu, () -> rsa.sign(message));
+    }
+
+    /**
+     * @see RSA#Verify(BigInteger)
+     */
+    public CompletableFuture<BigInteger> verifyAsync(BigInteger signedMessage)
+    {
+        return submit(cpu, () -> rsa.Verify(signedMessage));
+    }
+
+    /**
+     * @return number of encrypted blocks
+     * @see RSA#encryptFile(String, String, boolean)
+     */
+    public CompletableFuture<Long> encryptFileAsync(String filePath, String encryptedPath, boolean binary)
+    {
+        return submit(io, () -> unchecked(() -> rsa.encryptFile(filePath, encryptedPath, binary)));
+    }
+
+    /**
+     * @return number of encrypted bytes
+     * @see RSA#encryptFileHybrid(String, String)
+     */
+    public CompletableFuture<Long> encryptFileHybridAsync(String filePath, String encryptedPath)
+    {
+        return submit(io, () -> unchecked(() -> rsa.encryptFileHybrid(filePath, encryptedPath)));
+    }
+
+    /**
+     * @return number of decrypted blocks, or bytes for a hybrid container
+     * @see RSA#decryptFile(String, String)
+     */
+    public CompletableFuture<Long> decryptFileAsync(String encryptedPath, String filePath)
+    {
+        return submit(io, () -> unchecked(() -> rsa.decryptFile(encryptedPath, filePath)));
+    }
+
+    /**
+     * @return number of signed blocks
+     * @see RSA#signFile(String, String, boolean)
+     */
+    public CompletableFuture<Long> signFileAsync(String filePath, String signedPath, boolean binary)
+    {
+        return submit(io, () -> unchecked(() -> rsa.signFile(filePath, signedPath, binary)));
+    }
+
+    /**
+     * @return number of verified blocks
+     * @see RSA#verifyFile(String, String)
+     */
+    public CompletableFuture<Long> verifyFileAsync(String signedPath, String filePath)
+    {
+        return submit(io, () -> unchecked(() -> rsa.verifyFile(signedPath, filePath)));
+    }
+
+    /**
+     * @see RSA#signFileDigest(String, String, String)
+     */
+    public CompletableFuture<Void> signFileDigestAsync(String filePath, String signedPath, String algorithm)
+    {
+        return submit(io, () -> unchecked(() -> {
+            rsa.signFileDigest(filePath, signedPath, algorithm);
+            return null;
+        }));
+    }
+
+    /**
+     * @return <code>true</code> if the signature matches the file
+     * @see RSA#verifyFileDigest(String, String)
+     */
+    public CompletableFuture<Boolean> verifyFileDigestAsync(String filePath, String signedPath)
+    {
+        return submit(io, () -> unchecked(() -> rsa.verifyFileDigest(filePath, signedPath)));
+    }
+
+    /**
+     * Stops accepting operations, the ones already submitted still complete
+     */
+    @Override
+    public void close()
+    {
+        cpu.shutdown();
+        io.shutdown();
+    }
+
+    /**
+     * Runs a pipeline stage of a file operation on the I/O executor, or on a
+     * thread of its own once the facade is closed
+     */
+    private void runStage(Runnable stage)
+    {
+        try {
+            io.execute(stage);
+        } catch (RejectedExecutionException ex) {
+            Thread thread = new Thread(stage, "rsa-async-stage");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Takes a permit, blocking while maxInFlight operations are pending
+     * unless called from a facade thread, and runs the operation on the executor
+     */
+    private <T> CompletableFuture<T> submit(ExecutorService executor, Supplier<T> operation)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        boolean permit;
+        if (worker.get()) {
+            permit = inFlight.tryAcquire();
+        } else {
+            try {
+                inFlight.acquire();
+                permit = true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(ex);
+                return future;
+            }
+        }
+        final Task<T> task = new Task<T>(future, operation, permit);
+        future.whenComplete((result, ex) -> {
+            if (ex instanceof CancellationException) {
+                task.interrupt();
+            }
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            if (permit) {
+                inFlight.release();
+            }
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Runs one operation, the runner is only interrupted while the operation runs
+     */
+    private class Task<T> implements Runnable {
+
+        private final CompletableFuture<T> future;
+        private final Supplier<T> operation;
+        private final boolean permit;
+        private Thread runner;
+
+        Task(CompletableFuture<T> future, Supplier<T> operation, boolean permit)
+        {
+            this.future = future;
+            this.operation = operation;
+            this.permit = permit;
+        }
+
+        @Override
+        public void run()
+        {
+            worker.set(Boolean.TRUE);
+            T result = null;
+            Throwable failure = null;
+            try {
+                synchronized (this) {
+                    runner = Thread.currentThread();
+                }
+                try {
+                    if (future.isDone()) {
+                        return; // cancelled while queued
+                    }
+                    result = operation.get();
+                } catch (Throwable ex) {
+                    failure = ex instanceof UncheckedIOException ? ex.getCause() : ex;
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                        Thread.interrupted(); // a cancellation must not leak to the next task
+                    }
+                }
+            } finally {
+                if (permit) {
+                    inFlight.release();
+                }
+            }
+            // dependent stages run here, after the permit is back
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+
+        synchronized void interrupt()
+        {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private static <T> T unchecked(IOSupplier<T> operation)
+    {
+        try {
+            return operation.get();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor() when the JVM
+     * supports virtual threads, <code>null</code> otherwise
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null; // before Java 21, or a preview feature that is not enabled
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
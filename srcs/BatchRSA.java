@@ -0,0 +1,397 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch RSA decryption (A. Fiat, "Batch RSA", CRYPTO '89)
+ *
+ * Several public keys share one modulus n and use small, pairwise coprime
+ * exponents e_1 .. e_b. Ciphertexts c_i encrypted under distinct e_i are
+ * decrypted together with a single full-size exponentiation:
+ * <ul>
+ * <li>up the product tree of the exponents every node combines its
+ * children into v = v_L^E_R * v_R^E_L, so the root holds
+ * A = prod c_i^(E / e_i) with E = prod e_i
+ * <li>the root is the only private operation: M = A^(1/E) = prod m_i, with
+ * the CRT exponent E^-1 mod phi
+ * <li>down the tree every node splits its product with X = 0 mod E_L,
+ * X = 1 mod E_R: M_R = M^X / (v_L^(X / E_L) * v_R^((X - 1) / E_R)) and
+ * M_L = M / M_R, one modular inversion per node
+ * </ul>
+ * Apart from the root every exponent is about the size of E, so a batch of
+ * b ciphertexts costs one private exponentiation plus O(b log b) short ones.
+ *
+ * The tree of a subset of exponents, with its exponent recodings and root
+ * key, is built on first use and kept in a cache of the
+ * {@link #PLAN_CACHE_SIZE} most recently used subsets; an instance is
+ * immutable apart from that cache and can be shared between threads.
+ */
+public class BatchRSA {
+
+    public final static int MAX_EXPONENTS = 64;
+
+    /** Subsets of exponents whose trees are kept, mixed streams produce many of them */
+    public final static int PLAN_CACHE_SIZE = 32;
+
+    private final static BigInteger ONE = BigInteger.ONE;
+
+    private final BigInteger n;
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger phi;
+    private final BigInteger[] exponents;
+    private final RSAPublicKey[] publicKeys;
+    private final RSAPrivateKey[] privateKeys; // d_i = e_i^-1 mod phi, for batches of one
+    private final Montgomery nContext;
+    private final Map<Long, Plan> plans = new LinkedHashMap<Long, Plan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Plan> eldest)
+        {
+            return size() > PLAN_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param privateKey - key with CRT components, only p and q are used
+     * @param exponents - pairwise coprime public exponents, each one coprime to phi
+     */
+    public BatchRSA(RSAPrivateKey privateKey, BigInteger... exponents)
+    {
+        if (!privateKey.isCrtKey()) {
+            throw new IllegalArgumentException("Batch decryption needs the CRT components of the key");
+        }
+        if (exponents.length < 1 || exponents.length > MAX_EXPONENTS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_EXPONENTS + " exponents are supported");
+        }
+        n = privateKey.getModulus();
+        p = privateKey.getP();
+        q = privateKey.getQ();
+        phi = p.subtract(ONE).multiply(q.subtract(ONE));
+        this.exponents = exponents.clone();
+        publicKeys = new RSAPublicKey[exponents.length];
+        privateKeys = new RSAPrivateKey[exponents.length];
+        for (int i = 0; i < exponents.length; i++) {
+            BigInteger e = exponents[i];
+            if (e.compareTo(ONE) <= 0 || !e.gcd(phi).equals(ONE)) {
+                throw new IllegalArgumentException("Exponent " + e + " is not invertible modulo phi");
+            }
+            for (int j = 0; j < i; j++) {
+                if (!e.gcd(exponents[j]).equals(ONE)) {
+                    throw new IllegalArgumentException("Exponents " + exponents[j] + " and " + e + " are not coprime");
+                }
+            }
+            publicKeys[i] = new RSAPublicKey(e, n);
+            privateKeys[i] = new RSAPrivateKey(e.modInverse(phi), p, q);
+        }
+        nContext = new Montgomery(n);
+    }
+
+    /**
+     * Picks the smallest odd primes that can serve as public exponents of a
+     * key, the usual choice for batch RSA
+     *
+     * @param privateKey - key with CRT components
+     * @param count - number of exponents
+     * @return count odd primes coprime to phi, in increasing order
+     */
+    public static BigInteger[] exponents(RSAPrivateKey privateKey, int count)
+    {
+        if (!privateKey.isCrtKey()) {
+            throw new IllegalArgumentException("Batch decryption needs the CRT components of the key");
+        }
+        BigInteger phi = privateKey.getP().subtract(ONE).multiply(privateKey.getQ().subtract(ONE));
+        BigInteger[] exponents = new BigInteger[count];
+        int found = 0;
+        for (long candidate = 3; found < count; candidate += 2) {
+            BigInteger e = BigInteger.valueOf(candidate);
+            if (e.isProbablePrime(32) && e.gcd(phi).equals(ONE)) {
+                exponents[found++] = e;
+            }
+        }
+        return exponents;
+    }
+
+    /**
+     * @return number of public exponents
+     */
+    public int size()
+    {
+        return exponents.length;
+    }
+
+    public BigInteger getModulus()
+    {
+        return n;
+    }
+
+    public BigInteger getExponent(int key)
+    {
+        return exponents[key];
+    }
+
+    /**
+     * @param key - index of the exponent
+     * @return public key (e_key, n) to encrypt for this batch decryptor
+     */
+    public RSAPublicKey getPublicKey(int key)
+    {
+        return publicKeys[key];
+    }
+
+    /**
+     * Decrypts ciphertexts under any of the exponents. They are grouped
+     * into batches holding at most one ciphertext per exponent, in arrival
+     * order, and every batch costs one private exponentiation
+     *
+     * @param ciphertexts
+     * @param keys - index of the exponent of every ciphertext
+     * @return decrypted messages, in the order of the ciphertexts
+     */
+    public List<BigInteger> decrypt(List<BigInteger> ciphertexts, int[] keys)
+    {
+        if (ciphertexts.size() != keys.length) {
+            throw new IllegalArgumentException("One key index is needed per ciphertext");
+        }
+        List<Deque<Integer>> pending = new ArrayList<Deque<Integer>>(exponents.length);
+        for (int i = 0; i < exponents.length; i++) {
+            pending.add(new ArrayDeque<Integer>());
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] < 0 || keys[i] >= exponents.length) {
+                throw new IllegalArgumentException("No exponent " + keys[i]);
+            }
+            pending.get(keys[i]).add(i);
+        }
+
+        BigInteger[] messages = new BigInteger[keys.length];
+        int[] positions = new int[exponents.length];
+        BigInteger[] batch = new BigInteger[exponents.length];
+        int remaining = keys.length;
+        while (remaining > 0) {
+            int size = 0;
+            long mask = 0;
+            for (int key = 0; key < pending.size(); key++) {
+                Integer position = pending.get(key).poll();
+                if (position != null) {
+                    positions[size] = position;
+                    batch[size] = ciphertexts.get(position);
+                    mask |= 1L << key;
+                    size++;
+                }
+            }
+            BigInteger[] decrypted = decryptBatch(Arrays.copyOf(batch, size), mask);
+            for (int i = 0; i < size; i++) {
+                messages[positions[i]] = decrypted[i];
+            }
+            remaining -= size;
+        }
+        return new ArrayList<BigInteger>(Arrays.asList(messages));
+    }
+
+    /**
+     * Decrypts one ciphertext per exponent
+     *
+     * @param ciphertexts - ciphertexts.get(i) is encrypted under exponent i,
+     * at most {@link #size()} of them
+     * @return decrypted messages, empty for no ciphertexts
+     */
+    public List<BigInteger> decrypt(List<BigInteger> ciphertexts)
+    {
+        if (ciphertexts.size() > exponents.length) {
+            throw new IllegalArgumentException("At most one ciphertext per exponent");
+        }
+        if (ciphertexts.isEmpty()) {
+            return new ArrayList<BigInteger>();
+        }
+        long mask = ciphertexts.size() == 64 ? -1L : (1L << ciphertexts.size()) - 1;
+        return new ArrayList<BigInteger>(Arrays.asList(
+            decryptBatch(ciphertexts.toArray(new BigInteger[0]), mask)));
+    }
+
+    /**
+     * Looks the plan up under the lock and builds a missing one outside it,
+     * two threads missing the same subset may both build it
+     */
+    private Plan cachedPlan(long mask)
+    {
+        synchronized (plans) {
+            Plan plan = plans.get(mask);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        Plan plan = plan(mask);
+        synchronized (plans) {
+            plans.put(mask, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @param c - one ciphertext per bit of mask, in increasing exponent order
+     * @param mask - exponents of the batch, at least one
+     */
+    private BigInteger[] decryptBatch(BigInteger[] c, long mask)
+    {
+        if (mask == 0 || c.length != Long.bitCount(mask)) {
+            throw new IllegalArgumentException("A batch needs one ciphertext per exponent of its mask");
+        }
+        long start = Metrics.start();
+        BigInteger[] m = new BigInteger[c.length];
+        if (c.length == 1) {
+            m[0] = privateKeys[Long.numberOfTrailingZeros(mask)].modPow(c[0]);
+        } else {
+            Plan plan = cachedPlan(mask);
+            BigInteger[] values = new BigInteger[plan.nodes];
+            try {
+                BigInteger root = up(plan.root, c, values);
+                down(plan.root, plan.rootKey.modPow(root), values, m);
+            } catch (ArithmeticException ex) {
+                // a ciphertext shares a factor with n (0 in practice), no batch inverse
+                for (int i = 0, key = -1; i < c.length; i++) {
+                    key = nextKey(mask, key);
+                    m[i] = privateKeys[key].modPow(c[i]);
+                }
+            }
+        }
+        Metrics.stop(Metrics.Operation.BATCH_DECRYPT, start, 0, c.length);
+        return m;
+    }
+
+    /**
+     * Product tree: v = c_i at a leaf, v_L^E_R * v_R^E_L above
+     */
+    private BigInteger up(Node node, BigInteger[] c, BigInteger[] values)
+    {
+        BigInteger v;
+        if (node.leaf >= 0) {
+            v = c[node.leaf].mod(n);
+        } else {
+            BigInteger left = up(node.left, c, values);
+            BigInteger right = up(node.right, c, values);
+            v = nContext.modPow(left, node.upLeft).multiply(nContext.modPow(right, node.upRight)).mod(n);
+        }
+        values[node.id] = v;
+        return v;
+    }
+
+    /**
+     * Splits M = M_L * M_R down to the leaves. With P = M^X, D = v_L^(X / E_L) *
+     * v_R^((X - 1) / E_R) and I = (D * P)^-1: M_R = P / D = P^2 * I and
+     * M_L = M / M_R = M * D^2 * I, so one inversion serves both halves
+     */
+    private void down(Node node, BigInteger product, BigInteger[] values, BigInteger[] m)
+    {
+        if (node.leaf >= 0) {
+            m[node.leaf] = product;
+            return;
+        }
+        BigInteger powered = nContext.modPow(product, node.split);
+        BigInteger d = nContext.modPow(values[node.left.id], node.splitLeft)
+            .multiply(nContext.modPow(values[node.right.id], node.splitRight)).mod(n);
+        BigInteger inverse = d.multiply(powered).mod(n).modInverse(n);
+        BigInteger right = powered.multiply(powered).mod(n).multiply(inverse).mod(n);
+        BigInteger left = product.multiply(d).mod(n).multiply(d).mod(n).multiply(inverse).mod(n);
+        down(node.left, left, values, m);
+        down(node.right, right, values, m);
+    }
+
+    private static int nextKey(long mask, int key)
+    {
+        return Long.numberOfTrailingZeros(mask & (-1L << (key + 1)));
+    }
+
+    /**
+     * Builds the tree of the exponents in mask and the root key E^-1 mod phi
+     */
+    private Plan plan(long mask)
+    {
+        if (mask == 0) {
+            throw new IllegalArgumentException("Empty batch");
+        }
+        int[] keys = new int[Long.bitCount(mask)];
+        for (int i = 0, key = -1; i < keys.length; i++) {
+            key = nextKey(mask, key);
+            keys[i] = key;
+        }
+        int[] ids = new int[1];
+        Node root = build(keys, 0, keys.length, ids);
+        return new Plan(root, ids[0], new RSAPrivateKey(root.exponent.modInverse(phi), p, q));
+    }
+
+    private Node build(int[] keys, int from, int to, int[] ids)
+    {
+        if (to - from == 1) {
+            return new Node(ids[0]++, exponents[keys[from]], from);
+        }
+        int mid = (from + to) >>> 1;
+        Node left = build(keys, from, mid, ids);
+        Node right = build(keys, mid, to, ids);
+        return new Node(ids[0]++, left, right);
+    }
+
+    private static class Plan {
+
+        private final Node root;
+        private final int nodes;
+        private final RSAPrivateKey rootKey;
+
+        Plan(Node root, int nodes, RSAPrivateKey rootKey)
+        {
+            this.root = root;
+            this.nodes = nodes;
+            this.rootKey = rootKey;
+        }
+    }
+
+    private static class Node {
+
+        private final int id;
+        private final BigInteger exponent; // product of the exponents below
+        private final int leaf;            // position in the batch, -1 above the leaves
+        private final Node left;
+        private final Node right;
+        private final SlidingWindow upLeft;     // E_R
+        private final SlidingWindow upRight;    // E_L
+        private final SlidingWindow split;      // X = 0 mod E_L, 1 mod E_R
+        private final SlidingWindow splitLeft;  // X / E_L
+        private final SlidingWindow splitRight; // (X - 1) / E_R
+
+        Node(int id, BigInteger exponent, int leaf)
+        {
+            this.id = id;
+            this.exponent = exponent;
+            this.leaf = leaf;
+            left = null;
+            right = null;
+            upLeft = null;
+            upRight = null;
+            split = null;
+            splitLeft = null;
+            splitRight = null;
+        }
+
+        Node(int id, Node left, Node right)
+        {
+            this.id = id;
+            this.left = left;
+            this.right = right;
+            leaf = -1;
+            exponent = left.exponent.multiply(right.exponent);
+            upLeft = new SlidingWindow(right.exponent);
+            upRight = new SlidingWindow(left.exponent);
+            BigInteger inverse = left.exponent.modInverse(right.exponent);
+            BigInteger x = left.exponent.multiply(inverse);
+            split = new SlidingWindow(x);
+            splitLeft = new SlidingWindow(inverse);
+            splitRight = new SlidingWindow(x.subtract(ONE).divide(right.exponent));
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package srcs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary container for encrypted or signed blocks, replacing one decimal
+ * line per block with fixed-width big-endian blocks
+ *
+ * Layout (big-endian):
+ * <pre>
+ *  0  magic "RSAB"
+ *  4  version (1 byte)
+ *  5  mode (1 byte), {@link #MODE_RAW}, {@link #MODE_PKCS1}, {@link #MODE_HYBRID},
+ *     {@link #MODE_SHA256} or {@link #MODE_SHA512}
+ *  6  reserved (2 bytes)
+ *  8  key fingerprint (8 bytes), see {@link #fingerprint(BigInteger)}
+ * 16  block width = modulus length in bytes (int)
+ * 20  block count (long), {@link #UNFINISHED} until the writer finishes
+ * 28  blocks, each exactly block width bytes
+ * </pre>
+ *
+ * Only a {@link #MODE_HYBRID} container carries data after its blocks, the
+ * file of any other mode ends with its last block.
+ */
+public class BlockContainer {
+
+    public final static int MAGIC = 0x52534142; // "RSAB"
+    public final static byte VERSION = 1;
+    public final static int HEADER_SIZE = 28;
+    /** Block count of a container whose writer did not finish */
+    public final static long UNFINISHED = -1;
+
+    /** Blocks are the plain modexp results of the legacy blocking */
+    public final static byte MODE_RAW = 0;
+    /** Blocks are PKCS#1 v1.5 encoded, see {@link Pkcs1} */
+    public final static byte MODE_PKCS1 = 1;
+    /** One wrapped session key followed by AES-GCM chunks, see {@link HybridCipher} */
+    public final static byte MODE_HYBRID = 2;
+    /** One signature over the SHA-256 digest of the file, see {@link DigestSignature} */
+    public final static byte MODE_SHA256 = 3;
+    /** One signature over the SHA-512 digest of the file, see {@link DigestSignature} */
+    public final static byte MODE_SHA512 = 4;
+
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static int MAP_WINDOW = 1 << 26;
+
+    /**
+     * @param n - modulus of the key
+     * @return first 8 bytes of SHA-256 over the modulus, the same for the
+     * public and the private key of one key pair
+     */
+    public static long fingerprint(BigInteger n)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(n.toByteArray());
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param n - modulus of the key
+     * @return number of bytes of every block
+     */
+    public static int blockWidth(BigInteger n)
+    {
+        return (n.bitLength() + 7) / 8;
+    }
+
+    /**
+     * @param path
+     * @return <code>true</code> if the file starts with the container magic
+     * @throws IOException
+     */
+    public static boolean isContainer(Path path) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading until the magic is complete or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param path
+     * @return mode of the container, -1 if the file is not a container
+     * @throws IOException
+     */
+    public static int mode(Path path) throws IOException
+    {
+        if (!isContainer(path)) {
+            return -1;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer mode = ByteBuffer.allocate(1);
+            channel.read(mode, 5);
+            return mode.position() == 1 ? mode.get(0) : -1;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes blocks to a file channel, the block count of the header stays
+     * {@link #UNFINISHED} until {@link #finish()} fills it in
+     */
+    public static class Writer implements BlockPipeline.BlockWriter {
+
+        private final FileChannel channel;
+        private final int width;
+        private final ByteBuffer buffer;
+        private final byte[] block;
+        private long count;
+
+        /**
+         * @param channel - positioned at the start of the container
+         * @param mode
+         * @param n - modulus of the key
+         * @throws IOException
+         */
+        public Writer(FileChannel channel, byte mode, BigInteger n) throws IOException
+        {
+            this.channel = channel;
+            width = blockWidth(n);
+            block = new byte[width];
+            buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, width + HEADER_SIZE));
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.put(mode);
+            buffer.putShort((short) 0);
+            buffer.putLong(fingerprint(n));
+            buffer.putInt(width);
+            buffer.putLong(UNFINISHED);
+        }
+
+        @Override
+        public void write(BigInteger value) throws IOException
+        {
+            if (buffer.remaining() < width) {
+                flush();
+            }
+            buffer.put(toFixedWidth(value, block));
+            count++;
+        }
+
+        /**
+         * Flushes the pending blocks and writes the block count to the header
+         *
+         * @return number of blocks written
+         * @throws IOException
+         */
+        public long finish() throws IOException
+        {
+            flush();
+            ByteBuffer countBuffer = ByteBuffer.allocate(8);
+            countBuffer.putLong(0, count);
+            channel.write(countBuffer, HEADER_SIZE - 8);
+            return count;
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private byte[] toFixedWidth(BigInteger value, byte[] out)
+        {
+            byte[] bytes = value.toByteArray();
+            int length = bytes.length;
+            int offset = 0;
+            if (length > width && bytes[0] == 0) { // sign byte
+                offset = 1;
+                length--;
+            }
+            if (value.signum() < 0 || length > width) {
+                throw new IllegalArgumentException("Block does not fit the modulus");
+            }
+            Arrays.fill(out, 0, width - length, (byte) 0);
+            System.arraycopy(bytes, offset, out, width - length, length);
+            return out;
+        }
+    }
+
+    /**
+     * Reads the blocks of a container from a channel
+     *
+     * When the channel is a {@link FileChannel} the blocks are sliced out of
+     * memory-mapped windows of up to 64 MiB, so reading a block costs no
+     * system call and no intermediate buffer; other channels are read
+     * through a direct buffer.
+     */
+    public static class Reader implements BlockPipeline.BlockReader {
+
+        private final ReadableByteChannel channel;
+        private final FileChannel file;
+        private final long start;
+        private MappedByteBuffer mapped;
+        private final byte mode;
+        private final int width;
+        private final long count;
+        private final ByteBuffer buffer;
+        private final byte[] block;
+        private long read;
+
+        /**
+         * Reads and checks the header
+         *
+         * @param channel - positioned at the start of the container
+         * @param n - modulus of the key the container is expected to belong to
+         * @throws IOException if the header is invalid or belongs to another key
+         */
+        public Reader(ReadableByteChannel channel, BigInteger n) throws IOException
+        {
+            this.channel = channel;
+            file = channel instanceof FileChannel ? (FileChannel) channel : null;
+            start = file != null ? file.position() : 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a block container");
+            }
+            byte version = header.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported container version " + version);
+            }
+            mode = header.get();
+            header.getShort();
+            if (header.getLong() != fingerprint(n)) {
+                throw new IOException("Container was written with another key");
+            }
+            width = header.getInt();
+            if (width != blockWidth(n)) {
+                throw new IOException("Block width does not match the key");
+            }
+            count = header.getLong();
+            if (count == UNFINISHED) {
+                throw new IOException("Container is incomplete, its writer did not finish");
+            }
+            if (count < 0) {
+                throw new IOException("Negative block count " + count);
+            }
+            block = new byte[width];
+            if (file != null) {
+                long payload = file.size() - start - HEADER_SIZE;
+                // divide instead of multiplying, a forged count must not overflow
+                if (count > payload / width) {
+                    throw new EOFException("Container holds fewer than " + count + " blocks");
+                }
+                if (mode != MODE_HYBRID && payload != count * width) {
+                    throw new IOException("Container holds more data than its " + count + " blocks");
+                }
+                buffer = null;
+            } else {
+                buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, width));
+                buffer.flip();
+            }
+        }
+
+        public byte getMode()
+        {
+            return mode;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        @Override
+        public BigInteger next() throws IOException
+        {
+            if (read == count) {
+                if (file == null && mode != MODE_HYBRID) {
+                    checkEnd();
+                }
+                return null;
+            }
+            if (file != null) {
+                if (mapped == null || mapped.remaining() < width) {
+                    long blocks = Math.min(count - read, Math.max(1, MAP_WINDOW / width));
+                    mapped = file.map(FileChannel.MapMode.READ_ONLY, start + HEADER_SIZE + read * width,
+                        blocks * width);
+                }
+                mapped.get(block);
+                read++;
+                return new BigInteger(1, block);
+            }
+            if (buffer.remaining() < width) {
+                buffer.compact();
+                while (buffer.position() < width) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException("Container ends after " + read + " of " + count + " blocks");
+                    }
+                }
+                buffer.flip();
+            }
+            buffer.get(block);
+            read++;
+            return new BigInteger(1, block);
+        }
+
+        /**
+         * Fails if the channel holds more than the counted blocks
+         */
+        private void checkEnd() throws IOException
+        {
+            if (buffer.hasRemaining()) {
+                throw new IOException("Container holds more data than its " + count + " blocks");
+            }
+            buffer.clear();
+            int length = channel.read(buffer);
+            buffer.flip();
+            if (length > 0) {
+                throw new IOException("Container holds more data than its " + count + " blocks");
+            }
+        }
+
+        private void readFully(ByteBuffer target) throws IOException
+        {
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    throw new EOFException("Container header is truncated");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs a per-block operation (encrypt, decrypt, sign, verify) over a list of
+ * blocks on a ForkJoinPool, keeping the order of the blocks
+ *
+ * The list is split in halves until a piece holds at most chunkSize blocks,
+ * each piece is then processed on one worker. Defaults can be tuned with the
+ * system properties <code>rsa.parallelism</code> and <code>rsa.chunkSize</code>.
+ */
+public class BlockEngine {
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * Engine with one worker per core and chunks of 16 blocks, unless
+     * overridden by system properties
+     */
+    public BlockEngine()
+    {
+        this(Integer.getInteger("rsa.parallelism", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("rsa.chunkSize", 16));
+    }
+
+    /**
+     * @param parallelism - number of worker threads
+     * @param chunkSize - maximum number of blocks handled by one task
+     */
+    public BlockEngine(int parallelism, int chunkSize)
+    {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Parallelism and chunk size must be positive");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * @param blocks
+     * @param operation applied to every block, must be thread-safe
+     * @return results in the same order as blocks
+     */
+    public List<BigInteger> map(List<BigInteger> blocks, UnaryOperator<BigInteger> operation)
+    {
+        BigInteger[] input = blocks.toArray(new BigInteger[0]);
+        BigInteger[] output = new BigInteger[input.length];
+        if (pool == null || input.length <= chunkSize) {
+            for (int i = 0; i < input.length; i++) {
+                output[i] = operation.apply(input[i]);
+            }
+        } else {
+            pool.invoke(new Chunk(input, output, 0, input.length, operation));
+        }
+        return new ArrayList<BigInteger>(Arrays.asList(output));
+    }
+
+    /**
+     * Like {@link #map(List, UnaryOperator)} for an operation that handles
+     * several blocks per call: it gets slices of at most chunkSize blocks
+     *
+     * @param blocks
+     * @param operation returns one result per block of its slice, must be thread-safe
+     * @return results in the same order as blocks
+     */
+    public List<BigInteger> mapSlices(List<BigInteger> blocks, UnaryOperator<BigInteger[]> operation)
+    {
+        BigInteger[] input = blocks.toArray(new BigInteger[0]);
+        BigInteger[] output = new BigInteger[input.length];
+        if (pool == null || input.length <= chunkSize) {
+            for (int from = 0; from < input.length; from += chunkSize) {
+                int to = Math.min(from + chunkSize, input.length);
+                System.arraycopy(operation.apply(Arrays.copyOfRange(input, from, to)), 0, output, from, to - from);
+            }
+        } else {
+            pool.invoke(new Slice(input, output, 0, input.length, operation));
+        }
+        return new ArrayList<BigInteger>(Arrays.asList(output));
+    }
+
+    /**
+     * Stops the worker threads, the engine can't be used afterwards
+     */
+    public void shutdown()
+    {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final BigInteger[] input;
+        private final BigInteger[] output;
+        private final int from;
+        private final int to;
+        private final UnaryOperator<BigInteger> operation;
+
+        Chunk(BigInteger[] input, BigInteger[] output, int from, int to, UnaryOperator<BigInteger> operation)
+        {
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    output[i] = operation.apply(input[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(input, output, from, middle, operation),
+                new Chunk(input, output, middle, to, operation));
+        }
+    }
+
+    private class Slice extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final BigInteger[] input;
+        private final BigInteger[] output;
+        private final int from;
+        private final int to;
+        private final UnaryOperator<BigInteger[]> operation;
+
+        Slice(BigInteger[] input, BigInteger[] output, int from, int to, UnaryOperator<BigInteger[]> operation)
+        {
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= chunkSize) {
+                System.arraycopy(operation.apply(Arrays.copyOfRange(input, from, to)), 0, output, from, to - from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Slice(input, output, from, middle, operation),
+                new Slice(input, output, middle, to, operation));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package srcs;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Streams blocks through reader -> modexp -> writer with bounded queues
+ *
+ * The reader runs on its own thread and hands batches of blocks to the
+ * caller thread, which applies the operation (through a {@link BlockEngine}
+ * when one is given) and hands the results to a writer thread. The reader
+ * and the writer get two new threads per run, or run on an executor given
+ * to the pipeline, such as a virtual thread executor. At most
+ * queueCapacity batches wait in each queue, so memory stays constant
+ * whatever the size of the input.
+ *
+ * Interrupting the caller aborts the run: the blocks not written yet are
+ * dropped, both threads are stopped and joined before {@link #run} throws,
+ * and the interrupt flag of the caller is restored.
+ */
+public class BlockPipeline {
+
+    /**
+     * Source of blocks, returns <code>null</code> when there are no more
+     */
+    public interface BlockReader {
+        BigInteger next() throws IOException;
+    }
+
+    /**
+     * Destination of blocks, called in input order
+     */
+    public interface BlockWriter {
+        void write(BigInteger block) throws IOException;
+    }
+
+    private final static List<BigInteger> END = Collections.emptyList();
+
+    private final static int DEFAULT_BATCH_SIZE = 64;
+
+    private final BlockEngine engine;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final Executor stages; // null to start a thread per stage
+
+    /**
+     * Pipeline with 4 batches per queue. A batch holds 64 blocks, or one
+     * chunk per worker of the engine when that is more, so every batch keeps
+     * all the workers busy
+     *
+     * @param engine - may be <code>null</code> to run the operation on the caller thread
+     */
+    public BlockPipeline(BlockEngine engine)
+    {
+        this(engine, null);
+    }
+
+    /**
+     * Pipeline with the default batches and queues of {@link #BlockPipeline(BlockEngine)}
+     *
+     * @param engine - may be <code>null</code> to run the operation on the caller thread
+     * @param stages - runs the reader and the writer, <code>null</code> to
+     * start two threads per run. It must run them alongside the caller, a
+     * bounded pool the caller itself runs on can deadlock
+     */
+    public BlockPipeline(BlockEngine engine, Executor stages)
+    {
+        this(engine, batchSize(engine), 4, stages);
+    }
+
+    /**
+     * @param engine - may be <code>null</code> to run the operation on the caller thread
+     * @param batchSize - blocks handed from one stage to the next at once
+     * @param queueCapacity - batches waiting between two stages
+     */
+    public BlockPipeline(BlockEngine engine, int batchSize, int queueCapacity)
+    {
+        this(engine, batchSize, queueCapacity, null);
+    }
+
+    /**
+     * @param engine - may be <code>null</code> to run the operation on the caller thread
+     * @param batchSize - blocks handed from one stage to the next at once
+     * @param queueCapacity - batches waiting between two stages
+     * @param stages - runs the reader and the writer, see {@link #BlockPipeline(BlockEngine, Executor)}
+     */
+    public BlockPipeline(BlockEngine engine, int batchSize, int queueCapacity, Executor stages)
+    {
+        if (batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Batch size and queue capacity must be positive");
+        }
+        this.engine = engine;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.stages = stages;
+    }
+
+    /**
+     * @param reader
+     * @param operation applied to every block
+     * @param writer
+     * @return number of blocks written
+     * @throws IOException if the reader or the writer failed
+     */
+    public long run(final BlockReader reader, UnaryOperator<BigInteger> operation, final BlockWriter writer)
+        throws IOException
+    {
+        final BlockingQueue<List<BigInteger>> input = new ArrayBlockingQueue<List<BigInteger>>(queueCapacity);
+        final BlockingQueue<List<BigInteger>> output = new ArrayBlockingQueue<List<BigInteger>>(queueCapacity);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Stage readerStage = new Stage("rsa-pipeline-reader", () -> {
+            try {
+                List<BigInteger> batch = new ArrayList<BigInteger>(batchSize);
+                BigInteger block;
+                while ((block = reader.next()) != null) {
+                    batch.add(block);
+                    if (batch.size() == batchSize) {
+                        input.put(batch);
+                        batch = new ArrayList<BigInteger>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    input.put(batch);
+                }
+                input.put(END);
+            } catch (InterruptedException ex) {
+                // the pipeline was aborted, nobody is waiting for more input
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+                try {
+                    input.put(END);
+                } catch (InterruptedException ignored) {
+                    // the caller stopped consuming already
+                }
+            }
+        });
+
+        final AtomicLong written = new AtomicLong();
+        Stage writerStage = new Stage("rsa-pipeline-writer", () -> {
+            boolean failed = false;
+            try {
+                List<BigInteger> batch;
+                while ((batch = output.take()) != END) {
+                    if (failed || failure.get() != null) {
+                        continue; // keep draining so the caller never blocks
+                    }
+                    try {
+                        for (BigInteger block : batch) {
+                            writer.write(block);
+                            written.incrementAndGet();
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                        failed = true;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        readerStage.start();
+        try {
+            writerStage.start();
+        } catch (RejectedExecutionException ex) {
+            readerStage.interrupt();
+            readerStage.joinUninterruptibly();
+            throw ex;
+        }
+
+        try {
+            List<BigInteger> batch;
+            while ((batch = input.take()) != END) {
+                if (failure.get() != null) {
+                    break;
+                }
+                output.put(engine != null ? engine.map(batch, operation) : apply(batch, operation));
+            }
+        } catch (RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, ex);
+        } finally {
+            readerStage.interrupt();
+            // the flag would make put and join throw at once and leave the writer parked
+            boolean interrupted = Thread.interrupted();
+            try {
+                output.put(END);
+                writerStage.join();
+                readerStage.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                failure.compareAndSet(null, ex);
+                writerStage.interrupt();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Throwable ex = failure.get();
+        if (ex instanceof IOException) {
+            throw (IOException) ex;
+        }
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        if (ex != null) {
+            throw new IOException("Pipeline interrupted", ex);
+        }
+        return written.get();
+    }
+
+    /**
+     * Reader or writer body, run on a thread of its own or on the stage
+     * executor. It is only interrupted while the body runs, so an executor
+     * thread never carries the interrupt of a finished stage into its next task
+     */
+    private class Stage implements Runnable {
+
+        private final String name;
+        private final Runnable body;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private Thread runner;
+        private boolean stopped;
+
+        Stage(String name, Runnable body)
+        {
+            this.name = name;
+            this.body = body;
+        }
+
+        void start()
+        {
+            if (stages == null) {
+                Thread thread = new Thread(this, name);
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                try {
+                    stages.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    finished.countDown();
+                    throw ex;
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                synchronized (this) {
+                    if (stopped) {
+                        return; // the run was aborted before the stage started
+                    }
+                    runner = Thread.currentThread();
+                }
+                try {
+                    body.run();
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                        Thread.interrupted();
+                    }
+                }
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        synchronized void interrupt()
+        {
+            stopped = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        void join() throws InterruptedException
+        {
+            finished.await();
+        }
+
+        void joinUninterruptibly()
+        {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int batchSize(BlockEngine engine)
+    {
+        if (engine == null) {
+            return DEFAULT_BATCH_SIZE;
+        }
+        return (int) Math.max(DEFAULT_BATCH_SIZE, Math.min(1 << 16, (long) engine.getParallelism() * engine.getChunkSize()));
+    }
+
+    private static List<BigInteger> apply(List<BigInteger> batch, UnaryOperator<BigInteger> operation)
+    {
+        List<BigInteger> result = new ArrayList<BigInteger>(batch.size());
+        for (BigInteger block : batch) {
+            result.add(operation.apply(block));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,155 @@
+package srcs;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash-then-sign signatures (RSASSA-PKCS1-v1_5, RFC 8017 section 8.2)
+ *
+ * The file is streamed once through SHA-256 or SHA-512 and only the
+ * encoded digest <b>00 01 FF..FF 00 || DigestInfo</b> is signed, so a file
+ * costs one private-key modexp whatever its size. The signature is a
+ * {@link BlockContainer} with a single block in {@link BlockContainer#MODE_SHA256}
+ * or {@link BlockContainer#MODE_SHA512}.
+ */
+public class DigestSignature {
+
+    public final static String SHA256 = "SHA-256";
+    public final static String SHA512 = "SHA-512";
+
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    /** DER encoding of the DigestInfo up to the digest bytes */
+    private final static byte[] SHA256_PREFIX = {
+        0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01,
+        0x65, 0x03, 0x04, 0x02, 0x01, 0x05, 0x00, 0x04, 0x20
+    };
+    private final static byte[] SHA512_PREFIX = {
+        0x30, 0x51, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01,
+        0x65, 0x03, 0x04, 0x02, 0x03, 0x05, 0x00, 0x04, 0x40
+    };
+
+    /**
+     * @param rsa - holds the private key
+     * @param file - file to sign
+     * @param signature - destination of the signature container
+     * @param algorithm - {@link #SHA256} or {@link #SHA512}
+     * @throws IOException
+     */
+    public static void sign(RSA rsa, Path file, Path signature, String algorithm) throws IOException
+    {
+        BigInteger n = rsa.getModulus();
+        BigInteger encoded = Pkcs1.pad(digestInfo(algorithm, digest(file, algorithm)),
+            BlockContainer.blockWidth(n), Pkcs1.SIGNATURE);
+        FileChannel channel = FileChannel.open(signature, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            BlockContainer.Writer writer = new BlockContainer.Writer(channel, mode(algorithm), n);
+            writer.write(rsa.sign(encoded));
+            writer.finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param rsa - holds the public key
+     * @param file - signed file
+     * @param signature - signature container
+     * @return <code>true</code> if the signature matches the file and the key
+     * @throws IOException if the signature is not a digest signature of this key
+     */
+    public static boolean verify(RSA rsa, Path file, Path signature) throws IOException
+    {
+        BigInteger n = rsa.getModulus();
+        BigInteger signed;
+        String algorithm;
+        FileChannel channel = FileChannel.open(signature, StandardOpenOption.READ);
+        try {
+            BlockContainer.Reader reader = new BlockContainer.Reader(channel, n);
+            algorithm = algorithm(reader.getMode());
+            if (algorithm == null || reader.getCount() != 1) {
+                throw new IOException("Not a digest signature");
+            }
+            signed = reader.next();
+        } finally {
+            channel.close();
+        }
+        byte[] expected = digestInfo(algorithm, digest(file, algorithm));
+        try {
+            byte[] actual = Pkcs1.unpad(rsa.Verify(signed), BlockContainer.blockWidth(n), Pkcs1.SIGNATURE);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param path
+     * @return <code>true</code> if the file is a digest signature container
+     * @throws IOException
+     */
+    public static boolean isDigestSignature(Path path) throws IOException
+    {
+        int mode = BlockContainer.mode(path);
+        return mode >= 0 && algorithm((byte) mode) != null;
+    }
+
+    /**
+     * Streams a file through the digest with a large direct buffer
+     */
+    private static byte[] digest(Path file, String algorithm) throws IOException
+    {
+        MessageDigest md = messageDigest(algorithm);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        return md.digest();
+    }
+
+    private static byte[] digestInfo(String algorithm, byte[] digest)
+    {
+        byte[] prefix = SHA512.equals(algorithm) ? SHA512_PREFIX : SHA256_PREFIX;
+        byte[] info = new byte[prefix.length + digest.length];
+        System.arraycopy(prefix, 0, info, 0, prefix.length);
+        System.arraycopy(digest, 0, info, prefix.length, digest.length);
+        return info;
+    }
+
+    private static MessageDigest messageDigest(String algorithm)
+    {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalArgumentException("Unsupported digest " + algorithm, ex);
+        }
+    }
+
+    private static byte mode(String algorithm)
+    {
+        if (SHA256.equals(algorithm)) return BlockContainer.MODE_SHA256;
+        if (SHA512.equals(algorithm)) return BlockContainer.MODE_SHA512;
+        throw new IllegalArgumentException("Unsupported digest " + algorithm);
+    }
+
+    private static String algorithm(byte mode)
+    {
+        if (mode == BlockContainer.MODE_SHA256) return SHA256;
+        if (mode == BlockContainer.MODE_SHA512) return SHA512;
+        return null;
+    }
+}
@@ -0,0 +1,195 @@
+package srcs;
+
+import java.math.BigInteger;
+
+/**
+ * Greatest common divisor and Bezout coefficients
+ *
+ * Large operands use Lehmer's algorithm (Knuth, TAOCP vol. 2, 4.5.2,
+ * algorithm L): the Euclidean quotients are simulated on the leading 62
+ * bits of the operands in long arithmetic and the accumulated 2x2 cofactor
+ * matrix is applied to the BigIntegers once per batch of about 30 steps, so
+ * a 2048-bit inverse needs a few dozen BigInteger updates instead of over a
+ * thousand divisions. Operands that fit a long use binary (Stein) or plain
+ * Euclidean steps without allocating.
+ */
+public class ExtendedGcd {
+
+    private final static int DIGIT_BITS = 62;
+
+    /**
+     * @param a - not negative
+     * @param b - not negative
+     * @return {g, x, y} with g = gcd(a, b) = a * x + b * y
+     */
+    public static BigInteger[] gcdExtended(BigInteger a, BigInteger b)
+    {
+        if (a.signum() < 0 || b.signum() < 0) {
+            throw new IllegalArgumentException("Operands must not be negative");
+        }
+        boolean swapped = a.compareTo(b) < 0;
+        BigInteger a0 = swapped ? b : a;
+        BigInteger b0 = swapped ? a : b;
+
+        // u = xu * a0 + . * b0, v = xv * a0 + . * b0
+        BigInteger u = a0;
+        BigInteger v = b0;
+        BigInteger xu = BigInteger.ONE;
+        BigInteger xv = BigInteger.ZERO;
+
+        while (v.bitLength() > DIGIT_BITS) {
+            int shift = u.bitLength() - DIGIT_BITS;
+            long uHat = u.shiftRight(shift).longValue();
+            long vHat = v.shiftRight(shift).longValue();
+            long ma = 1, mb = 0, mc = 0, md = 1;
+            try {
+                while (vHat + mc != 0 && vHat + md != 0) {
+                    long q = (uHat + ma) / (vHat + mc);
+                    if (q != (uHat + mb) / (vHat + md)) {
+                        break;
+                    }
+                    long nc = Math.subtractExact(ma, Math.multiplyExact(q, mc));
+                    long nd = Math.subtractExact(mb, Math.multiplyExact(q, md));
+                    ma = mc;
+                    mc = nc;
+                    mb = md;
+                    md = nd;
+                    long t = uHat - q * vHat;
+                    uHat = vHat;
+                    vHat = t;
+                }
+            } catch (ArithmeticException ex) {
+                // cofactors left the long range, apply what was accumulated
+            }
+            if (mb == 0) {
+                // the leading digits could not decide a single quotient
+                BigInteger[] qr = u.divideAndRemainder(v);
+                BigInteger t = xu.subtract(qr[0].multiply(xv));
+                u = v;
+                v = qr[1];
+                xu = xv;
+                xv = t;
+            } else {
+                BigInteger nu = combine(ma, u, mb, v);
+                BigInteger nv = combine(mc, u, md, v);
+                BigInteger nxu = combine(ma, xu, mb, xv);
+                BigInteger nxv = combine(mc, xu, md, xv);
+                u = nu;
+                v = nv;
+                xu = nxu;
+                xv = nxv;
+            }
+        }
+
+        // the rest fits a long, only the cofactors stay BigIntegers
+        if (v.signum() != 0) {
+            BigInteger[] qr = u.divideAndRemainder(v);
+            BigInteger t = xu.subtract(qr[0].multiply(xv));
+            u = v;
+            v = qr[1];
+            xu = xv;
+            xv = t;
+        }
+        if (v.signum() == 0) {
+            return result(swapped, a0, b0, u, xu);
+        }
+        long lu = u.longValue();
+        long lv = v.longValue();
+        while (lv != 0) {
+            long q = lu / lv;
+            long t = lu - q * lv;
+            lu = lv;
+            lv = t;
+            BigInteger tx = xu.subtract(xv.multiply(BigInteger.valueOf(q)));
+            xu = xv;
+            xv = tx;
+        }
+
+        return result(swapped, a0, b0, BigInteger.valueOf(lu), xu);
+    }
+
+    /**
+     * @return {g, x, y} for the operands in the caller's order, y is
+     * recovered from g = a0 * x0 + b0 * y0
+     */
+    private static BigInteger[] result(boolean swapped, BigInteger a0, BigInteger b0, BigInteger g, BigInteger x0)
+    {
+        BigInteger y0 = b0.signum() == 0 ? BigInteger.ZERO : g.subtract(a0.multiply(x0)).divide(b0);
+        return swapped ? new BigInteger[] {g, y0, x0} : new BigInteger[] {g, x0, y0};
+    }
+
+    /**
+     * @param a - not negative
+     * @param b - not negative
+     * @return gcd(a, b)
+     */
+    public static BigInteger gcd(BigInteger a, BigInteger b)
+    {
+        if (a.bitLength() < 63 && b.bitLength() < 63) {
+            return BigInteger.valueOf(gcd(a.longValue(), b.longValue()));
+        }
+        if (b.bitLength() < 63 && b.signum() > 0) {
+            return BigInteger.valueOf(gcd(b.longValue(), a.mod(b).longValue()));
+        }
+        if (a.bitLength() < 63 && a.signum() > 0) {
+            return BigInteger.valueOf(gcd(a.longValue(), b.mod(a).longValue()));
+        }
+        return gcdExtended(a, b)[0];
+    }
+
+    /**
+     * Binary (Stein) gcd
+     *
+     * @param a - not negative
+     * @param b - not negative
+     * @return gcd(a, b)
+     */
+    public static long gcd(long a, long b)
+    {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while (b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    /**
+     * @param a
+     * @param m - modulus, positive
+     * @return a^-1 mod m in [0, m), or -1 if a is not invertible
+     */
+    public static long inverse(long a, long m)
+    {
+        long r0 = m;
+        long r1 = Math.floorMod(a, m);
+        long s0 = 0;
+        long s1 = 1;
+        while (r1 != 0) {
+            long q = r0 / r1;
+            long t = r0 - q * r1;
+            r0 = r1;
+            r1 = t;
+            t = s0 - q * s1;
+            s0 = s1;
+            s1 = t;
+        }
+        if (r0 != 1) {
+            return -1;
+        }
+        return Math.floorMod(s0, m);
+    }
+
+    private static BigInteger combine(long x, BigInteger a, long y, BigInteger b)
+    {
+        return a.multiply(BigInteger.valueOf(x)).add(b.multiply(BigInteger.valueOf(y)));
+    }
+}
@@ -0,0 +1,180 @@
+package srcs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hybrid encryption for large files: RSA wraps one random AES-256 session
+ * key and the file body is encrypted with AES-GCM in chunks of 1 MiB, so a
+ * file costs one modexp whatever its size
+ *
+ * The file is a {@link BlockContainer} in {@link BlockContainer#MODE_HYBRID}
+ * holding a single block, the PKCS#1 v1.5 encrypted session key, followed by
+ * <pre>
+ *  nonce prefix (4 bytes)
+ *  chunks: final flag (1 byte), ciphertext length (int), ciphertext + 16-byte tag
+ * </pre>
+ * Chunk i uses the nonce prefix || i as GCM nonce and authenticates i and
+ * its final flag, so chunks can't be reordered, dropped or truncated.
+ */
+public class HybridCipher {
+
+    public final static int CHUNK_SIZE = 1 << 20;
+
+    private final static int KEY_SIZE = 32;
+    private final static int TAG_BITS = 128;
+    private final static int TAG_SIZE = TAG_BITS / 8;
+    private final static int CHUNK_HEADER_SIZE = 5;
+    private final static String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * @param rsa - holds the public key
+     * @param in - plain content
+     * @param channel - destination, positioned at the start of the container
+     * @return number of bytes encrypted
+     * @throws IOException
+     */
+    public static long encrypt(RSA rsa, InputStream in, FileChannel channel) throws IOException
+    {
+        BigInteger n = rsa.getModulus();
+        int k = BlockContainer.blockWidth(n);
+        if (Pkcs1.capacity(k) < KEY_SIZE) {
+            throw new IllegalArgumentException("Modulus is too small to wrap a session key");
+        }
+        byte[] key = new byte[KEY_SIZE];
+        RandomSource.nextBytes(key);
+        byte[] noncePrefix = new byte[4];
+        RandomSource.nextBytes(noncePrefix);
+
+        BlockContainer.Writer writer = new BlockContainer.Writer(channel, BlockContainer.MODE_HYBRID, n);
+        writer.write(rsa.encrypt(Pkcs1.pad(key, k, Pkcs1.ENCRYPTION)));
+        writer.finish();
+        writeFully(channel, ByteBuffer.wrap(noncePrefix));
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+            ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+            long total = 0;
+            long index = 0;
+            byte[] current = in.readNBytes(CHUNK_SIZE);
+            while (true) {
+                byte[] next = current.length == CHUNK_SIZE ? in.readNBytes(CHUNK_SIZE) : new byte[0];
+                boolean last = next.length == 0;
+                cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(TAG_BITS, nonce(noncePrefix, index)));
+                cipher.updateAAD(associatedData(index, last));
+                byte[] encrypted = cipher.doFinal(current);
+                header.clear();
+                header.put((byte) (last ? 1 : 0)).putInt(encrypted.length).flip();
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(encrypted));
+                total += current.length;
+                if (last) {
+                    return total;
+                }
+                current = next;
+                index++;
+            }
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("AES-GCM is not available", ex);
+        }
+    }
+
+    /**
+     * @param rsa - holds the private key
+     * @param channel - container, positioned at its start
+     * @param out - destination of the plain content, not closed
+     * @return number of bytes decrypted
+     * @throws IOException if the container is invalid, truncated or was tampered with
+     */
+    public static long decrypt(RSA rsa, FileChannel channel, OutputStream out) throws IOException
+    {
+        BigInteger n = rsa.getModulus();
+        int k = BlockContainer.blockWidth(n);
+        long start = channel.position();
+        BlockContainer.Reader reader = new BlockContainer.Reader(channel, n);
+        if (reader.getMode() != BlockContainer.MODE_HYBRID || reader.getCount() != 1) {
+            throw new IOException("Not a hybrid container");
+        }
+        byte[] key;
+        try {
+            key = Pkcs1.unpad(rsa.decrypt(reader.next()), k, Pkcs1.ENCRYPTION);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid session key - wrong key or corrupted file", ex);
+        }
+        if (key.length != KEY_SIZE) {
+            throw new IOException("Invalid session key length");
+        }
+        channel.position(start + BlockContainer.HEADER_SIZE + k);
+        ByteBuffer noncePrefix = ByteBuffer.allocate(4);
+        readFully(channel, noncePrefix);
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+            ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+            long total = 0;
+            for (long index = 0; ; index++) {
+                header.clear();
+                readFully(channel, header);
+                header.flip();
+                boolean last = header.get() != 0;
+                int length = header.getInt();
+                if (length < TAG_SIZE || length > CHUNK_SIZE + TAG_SIZE) {
+                    throw new IOException("Invalid chunk length " + length);
+                }
+                ByteBuffer encrypted = ByteBuffer.allocate(length);
+                readFully(channel, encrypted);
+                cipher.init(Cipher.DECRYPT_MODE, keySpec,
+                    new GCMParameterSpec(TAG_BITS, nonce(noncePrefix.array(), index)));
+                cipher.updateAAD(associatedData(index, last));
+                byte[] decrypted = cipher.doFinal(encrypted.array());
+                out.write(decrypted);
+                total += decrypted.length;
+                if (last) {
+                    if (channel.position() != channel.size()) {
+                        throw new IOException("Unexpected data after the final chunk");
+                    }
+                    return total;
+                }
+            }
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Chunk failed authentication - wrong key or corrupted file", ex);
+        }
+    }
+
+    private static byte[] nonce(byte[] prefix, long index)
+    {
+        return ByteBuffer.allocate(12).put(prefix).putLong(index).array();
+    }
+
+    private static byte[] associatedData(long index, boolean last)
+    {
+        return ByteBuffer.allocate(9).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Hybrid container is truncated");
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package srcs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of parsed key files
+ *
+ * A key file is parsed and its modexp context ({@link RSAPublicKey},
+ * {@link RSAPrivateKey}) built once; later loads of the same path return
+ * the same immutable key as long as the file keeps its modification time
+ * and size. A changed file is parsed again, and the least recently used
+ * key is evicted once the cache holds more than its capacity. Lookups take
+ * one stat of the file and a short synchronized section; parsing happens
+ * outside the lock, so two threads missing the same file may both parse it.
+ */
+public class KeyCache {
+
+    public final static int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final Map<CacheKey, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Cache of <code>rsa.keyCache.size</code> keys, 256 by default
+     */
+    public KeyCache()
+    {
+        this(Integer.getInteger("rsa.keyCache.size", DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @param capacity - maximum number of cached keys
+     */
+    public KeyCache(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        entries = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest)
+            {
+                if (size() > KeyCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param path - .pub file
+     * @return cached or freshly parsed public key
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a public key
+     */
+    public RSAPublicKey getPublicKey(Path path) throws IOException
+    {
+        return (RSAPublicKey) get(path, false);
+    }
+
+    /**
+     * @param path - .pri file
+     * @return cached or freshly parsed private key
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a private key
+     */
+    public RSAPrivateKey getPrivateKey(Path path) throws IOException
+    {
+        return (RSAPrivateKey) get(path, true);
+    }
+
+    /**
+     * Drops every key of a file
+     *
+     * @param path
+     */
+    public synchronized void invalidate(Path path)
+    {
+        Path normalized = path.toAbsolutePath().normalize();
+        entries.remove(new CacheKey(normalized, false));
+        entries.remove(new CacheKey(normalized, true));
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("size=%d capacity=%d hits=%d misses=%d evictions=%d",
+            size(), capacity, getHits(), getMisses(), getEvictions());
+    }
+
+    private Object get(Path path, boolean isPrivate) throws IOException
+    {
+        CacheKey cacheKey = new CacheKey(path.toAbsolutePath().normalize(), isPrivate);
+        BasicFileAttributes attributes = Files.readAttributes(cacheKey.path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        synchronized (this) {
+            Entry entry = entries.get(cacheKey);
+            if (entry != null && entry.modified == modified && entry.size == size) {
+                hits.increment();
+                return entry.key;
+            }
+        }
+        misses.increment();
+        Object key = isPrivate ? RSAPrivateKey.fromList(RSA.readFromFile(cacheKey.path.toString()))
+            : RSAPublicKey.fromList(RSA.readFromFile(cacheKey.path.toString()));
+        synchronized (this) {
+            entries.put(cacheKey, new Entry(modified, size, key));
+        }
+        return key;
+    }
+
+    /**
+     * Public and private keys of the same path are cached apart
+     */
+    private static class CacheKey {
+
+        private final Path path;
+        private final boolean isPrivate;
+
+        CacheKey(Path path, boolean isPrivate)
+        {
+            this.path = path;
+            this.isPrivate = isPrivate;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return isPrivate == other.isPrivate && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return path.hashCode() * 31 + (isPrivate ? 1 : 0);
+        }
+    }
+
+    private static class Entry {
+
+        private final long modified;
+        private final long size;
+        private final Object key;
+
+        Entry(long modified, long size, Object key)
+        {
+            this.modified = modified;
+            this.size = size;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Generates key pairs with the prime search spread over several threads
+ *
+ * Every thread runs its own candidate search ({@link PrimeCandidates}
+ * then {@link Utils#isMillerRabinPassed(BigInteger, int)}) and the first two
+ * distinct primes found become p and q, so p and q are searched at the same
+ * time. The other searches stop as soon as both are found, or the caller is
+ * interrupted: the flag is checked in the sieve and between Miller Rabin
+ * rounds. The caller runs one search and the others run on parallelism - 1
+ * daemon threads kept by the generator across calls. The number of searches
+ * defaults to the system property <code>rsa.parallelism</code> or the number
+ * of cores.
+ *
+ * The public exponent is fixed, 65537 unless the system property
+ * <code>rsa.publicExponent</code> says otherwise, and candidates p with
+ * gcd(e, p - 1) != 1 are dropped before the Miller Rabin test, so e is
+ * always invertible modulo phi.
+ */
+public class KeyGenerator {
+
+    /** F4 = 2^16 + 1, public operations cost 16 squarings and one multiplication */
+    public final static BigInteger DEFAULT_PUBLIC_EXPONENT = BigInteger.valueOf(65537);
+
+    private final int parallelism;
+    private final BigInteger publicExponent;
+    private final ExecutorService workers; // null with a single search
+
+    /**
+     * Generator with one search per core and e = 65537, unless overridden by
+     * the <code>rsa.parallelism</code> and <code>rsa.publicExponent</code>
+     * system properties
+     */
+    public KeyGenerator()
+    {
+        this(Integer.getInteger("rsa.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param parallelism - number of concurrent prime searches
+     */
+    public KeyGenerator(int parallelism)
+    {
+        this(parallelism, System.getProperty("rsa.publicExponent") != null
+            ? new BigInteger(System.getProperty("rsa.publicExponent")) : DEFAULT_PUBLIC_EXPONENT);
+    }
+
+    /**
+     * @param parallelism - number of concurrent prime searches
+     * @param publicExponent - odd, at least 3
+     */
+    public KeyGenerator(int parallelism, BigInteger publicExponent)
+    {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (publicExponent.compareTo(BigInteger.valueOf(3)) < 0 || !publicExponent.testBit(0)) {
+            throw new IllegalArgumentException("Public exponent must be odd and at least 3");
+        }
+        this.parallelism = parallelism;
+        this.publicExponent = publicExponent;
+        if (parallelism > 1) {
+            final AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(parallelism - 1, runnable -> {
+                Thread thread = new Thread(runnable, "rsa-keygen-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            workers = null;
+        }
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public BigInteger getPublicExponent()
+    {
+        return publicExponent;
+    }
+
+    /**
+     * Stops the search threads, the generator can't be used afterwards
+     */
+    public void shutdown()
+    {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * @param keySize - bit length of each prime, as for {@link Utils#primeGeneration(int)}
+     * @return key pair with CRT parameters
+     * @throws IllegalStateException if the caller was interrupted
+     */
+    public RSA generate(int keySize)
+    {
+        BigInteger[] primes = generatePrimes(keySize);
+        return new RSA(primes[0], primes[1], publicExponent);
+    }
+
+    /**
+     * @param bits - bit length of each prime, as for {@link Utils#primeGeneration(int)}
+     * @return two distinct probable primes p with gcd(e, p - 1) = 1
+     * @throws IllegalStateException if the caller was interrupted
+     */
+    public BigInteger[] generatePrimes(final int bits)
+    {
+        final List<BigInteger> primes = new ArrayList<BigInteger>(2);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        final Thread caller = Thread.currentThread();
+        final BooleanSupplier stop = () -> done.get() || caller.isInterrupted();
+
+        Runnable search = () -> {
+            try {
+                long start = Metrics.start();
+                long rejected = 0;
+                PrimeCandidates candidates = new PrimeCandidates(bits);
+                while (!stop.getAsBoolean()) {
+                    BigInteger candidate = candidates.next(stop);
+                    if (candidate == null || !candidate.subtract(BigInteger.ONE).gcd(publicExponent).equals(BigInteger.ONE)) {
+                        continue;
+                    }
+                    if (!Utils.isMillerRabinPassed(candidate, bits, stop)) {
+                        if (!stop.getAsBoolean()) {
+                            rejected++;
+                        }
+                        continue;
+                    }
+                    Metrics.stop(Metrics.Operation.PRIME_GENERATION, start, 0, rejected);
+                    start = Metrics.start();
+                    rejected = 0;
+                    synchronized (primes) {
+                        if (primes.size() < 2 && !primes.contains(candidate)) {
+                            primes.add(candidate);
+                        }
+                        if (primes.size() == 2) {
+                            done.set(true);
+                        }
+                    }
+                }
+            } catch (RuntimeException ex) {
+                failure.compareAndSet(null, ex);
+                done.set(true);
+            }
+        };
+
+        List<Future<?>> searches = new ArrayList<Future<?>>(parallelism - 1);
+        for (int i = 1; i < parallelism; i++) {
+            searches.add(workers.submit(search));
+        }
+        search.run(); // the caller is one of the searches
+        done.set(true);
+        for (Future<?> future : searches) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                failure.compareAndSet(null, new IllegalStateException("Prime search failed", ex.getCause()));
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        synchronized (primes) {
+            if (primes.size() < 2) {
+                throw new IllegalStateException("Key generation interrupted");
+            }
+            return primes.toArray(new BigInteger[0]);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package srcs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stock of pre-generated key pairs of one key size
+ *
+ * A background thread fills the stock up to the high watermark and starts
+ * refilling it whenever a take leaves at most the low watermark. Taking a
+ * key is a queue poll and doesn't wait for a prime search unless the stock
+ * ran dry. A failed generation is logged and retried after a pause, it
+ * doesn't stop the refill thread. Keys can be saved to and loaded from a
+ * file so a restarted service doesn't start with an empty pool; use one
+ * pool per key size.
+ */
+public class KeyPool {
+
+    private final KeyGenerator generator;
+    private final int keySize;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final BlockingQueue<RSA> stock;
+    /** Pause of the refill thread after a failed generation */
+    private final static long RETRY_MILLIS = 1000;
+    /** A take waiting for a key checks this often whether the pool was shut down */
+    private final static long SHUTDOWN_CHECK_MILLIS = 100;
+
+    private final Object refillSignal = new Object();
+    private final Thread refiller;
+    private volatile boolean running = true;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+
+    /**
+     * Starts the refill thread, which fills the pool up to the high watermark
+     *
+     * @param generator - used by the refill thread
+     * @param keySize - bit length of each prime, as for {@link KeyGenerator#generate(int)}
+     * @param lowWatermark - refill starts when the pool holds this many keys or fewer
+     * @param highWatermark - capacity of the pool, refill stops when it is reached
+     */
+    public KeyPool(KeyGenerator generator, int keySize, int lowWatermark, int highWatermark)
+    {
+        if (lowWatermark < 0 || highWatermark < 1 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high");
+        }
+        this.generator = generator;
+        this.keySize = keySize;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        stock = new ArrayBlockingQueue<RSA>(highWatermark);
+        refiller = new Thread(this::refill, "rsa-keypool-" + keySize);
+        refiller.setDaemon(true);
+        refiller.start();
+    }
+
+    /**
+     * @return a key pair, waiting for one to be generated if the pool is empty
+     * @throws InterruptedException
+     * @throws IllegalStateException if the pool is or gets shut down while empty
+     */
+    public RSA take() throws InterruptedException
+    {
+        if (!running) {
+            throw new IllegalStateException("Key pool is shut down");
+        }
+        RSA key = stock.poll();
+        if (key == null) {
+            signalRefill();
+            while ((key = stock.poll(SHUTDOWN_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (!running) {
+                    throw new IllegalStateException("Key pool is shut down");
+                }
+            }
+        }
+        taken(key);
+        return key;
+    }
+
+    /**
+     * @return a key pair, or <code>null</code> if the pool is empty
+     */
+    public RSA poll()
+    {
+        RSA key = stock.poll();
+        if (key != null) {
+            taken(key);
+        } else {
+            signalRefill();
+        }
+        return key;
+    }
+
+    /**
+     * Stops the refill thread, keys left in the pool can still be polled
+     * and a take waiting for a key fails
+     */
+    public void shutdown()
+    {
+        running = false;
+        refiller.interrupt();
+    }
+
+    public int getKeySize()
+    {
+        return keySize;
+    }
+
+    /**
+     * @return number of keys ready to be taken
+     */
+    public int getDepth()
+    {
+        return stock.size();
+    }
+
+    /**
+     * @return number of keys generated by the refill thread
+     */
+    public long getGenerated()
+    {
+        return generated.get();
+    }
+
+    /**
+     * @return number of keys taken from the pool
+     */
+    public long getTaken()
+    {
+        return taken.get();
+    }
+
+    /**
+     * @return keys generated per second of refill work, 0 before the first one
+     */
+    public double getRefillRate()
+    {
+        long nanos = generationNanos.get();
+        return nanos == 0 ? 0 : generated.get() * 1e9 / nanos;
+    }
+
+    /**
+     * Writes the keys of the pool, one per line: the .pub layout followed
+     * by the .pri layout. The file holds private keys, it is made readable
+     * by its owner only where the file system supports it. The keys are
+     * written to a temporary file created with these permissions, which then
+     * replaces path, so they are never readable by others
+     *
+     * @param path
+     * @return number of keys written
+     * @throws IOException
+     */
+    public int save(Path path) throws IOException
+    {
+        List<RSA> keys = new ArrayList<RSA>(stock);
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName().toString();
+        Path temp;
+        try {
+            temp = Files.createTempFile(directory, prefix, ".tmp",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ex) {
+            temp = Files.createTempFile(directory, prefix, ".tmp"); // not a POSIX file system
+        }
+        try {
+            writeKeys(keys, temp);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return keys.size();
+    }
+
+    private static void writeKeys(List<RSA> keys, Path path) throws IOException
+    {
+        BufferedWriter bw = Files.newBufferedWriter(path, Charset.forName("UTF-8"));
+        try {
+            for (RSA key : keys) {
+                List<BigInteger> line = key.getPublicKey();
+                line.addAll(key.getPrivateKey());
+                for (int i = 0; i < line.size(); i++) {
+                    if (i > 0) {
+                        bw.write(' ');
+                    }
+                    bw.write(line.get(i).toString());
+                }
+                bw.write('\n');
+            }
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Adds the keys of a file written by {@link #save(Path)}, as long as
+     * the pool has room and the keys have the size of the pool
+     *
+     * @param path
+     * @return number of keys added
+     * @throws IOException
+     * @throws NumberFormatException if the file is not a saved pool or a
+     * line holds the keys of two different moduli
+     */
+    public int load(Path path) throws IOException
+    {
+        int added = 0;
+        BufferedReader br = Files.newBufferedReader(path, Charset.forName("UTF-8"));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if ("".equals(line)) {
+                    continue;
+                }
+                String[] words = line.split("\\s");
+                if (words.length < 4) {
+                    throw new NumberFormatException("Invalid key pool line");
+                }
+                List<BigInteger> values = new ArrayList<BigInteger>();
+                for (String w : words) {
+                    values.add(new BigInteger(w));
+                }
+                if (!values.get(1).equals(values.get(3))) {
+                    throw new NumberFormatException("Public and private key of a key pool line differ");
+                }
+                int bits = values.get(1).bitLength();
+                if (bits < 2 * keySize - 1 || bits > 2 * keySize) {
+                    continue; // saved by a pool of another key size
+                }
+                RSA key = new RSA(RSAPublicKey.fromList(values.subList(0, 2)),
+                    RSAPrivateKey.fromList(values.subList(2, values.size())));
+                if (!stock.offer(key)) {
+                    break;
+                }
+                added++;
+            }
+        } finally {
+            br.close();
+        }
+        return added;
+    }
+
+    private void taken(RSA key)
+    {
+        taken.incrementAndGet();
+        if (stock.size() <= lowWatermark) {
+            signalRefill();
+        }
+    }
+
+    private void signalRefill()
+    {
+        synchronized (refillSignal) {
+            refillSignal.notifyAll();
+        }
+    }
+
+    private void refill()
+    {
+        try {
+            while (running) {
+                while (running && stock.size() < highWatermark) {
+                    long start = System.nanoTime();
+                    RSA key;
+                    try {
+                        key = generator.generate(keySize);
+                    } catch (RuntimeException ex) {
+                        if (!running) {
+                            return; // interrupted by shutdown
+                        }
+                        Logger.getLogger(KeyPool.class.getName()).log(Level.WARNING,
+                            "Key generation failed, retrying", ex);
+                        Thread.sleep(RETRY_MILLIS);
+                        continue;
+                    }
+                    generationNanos.addAndGet(System.nanoTime() - start);
+                    if (!stock.offer(key)) {
+                        break; // filled by load meanwhile
+                    }
+                    generated.incrementAndGet();
+                }
+                synchronized (refillSignal) {
+                    while (running && stock.size() > lowWatermark) {
+                        refillSignal.wait();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            // shut down
+        }
+    }
+}
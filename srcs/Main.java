@@ -1,16 +1,49 @@
 package srcs;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
 
 
 public class Main {
 
+    /**
+     * Spreads the blocks of every file operation over all cores
+     */
+    private final static BlockEngine engine = new BlockEngine();
+
+    /**
+     * Searches for p and q on all cores
+     */
+    private final static KeyGenerator keyGenerator = new KeyGenerator();
+
+    /**
+     * Keeps parsed key files so repeated operations skip the parse and
+     * the context setup
+     */
+    private final static KeyCache keyCache = new KeyCache();
+
+    /**
+     * Output formats of encrypted and signed files
+     * text - one decimal block per line
+     * bin  - binary {@link BlockContainer}
+     * hybrid - RSA wrapped AES-GCM session key, encryption only
+     * sha256, sha512 - one signature over the digest of the file, signing only
+     */
+    private final static String FORMAT_TEXT = "text";
+    private final static String FORMAT_BINARY = "bin";
+    private final static String FORMAT_HYBRID = "hybrid";
+    private final static String FORMAT_SHA256 = "sha256";
+    private final static String FORMAT_SHA512 = "sha512";
+
     /**
      * Generate public key and private key and write 
      * to two file {fileName}.pub and {fileName}.pri
+     * The private key file carries d, n followed by the CRT
+     * components p, q, dP, dQ, qInv
+     * p and q are searched in parallel, see {@link KeyGenerator}
      * 
      * @param fileName
      * @param keySize
@@ -19,22 +52,9 @@ public class Main {
     public static void generateKey(String fileName, int keySize)
     {
         long start = System.currentTimeMillis();
-        BigInteger p = Utils.primeGeneration(keySize);
-        BigInteger q = Utils.primeGeneration(keySize);
-        while (q.compareTo(p) == 0)
-            q = Utils.primeGeneration(keySize);
-        BigInteger n = p.multiply(q);
-        BigInteger phi = (p.subtract(BigInteger.ONE)).multiply(q.subtract(BigInteger.ONE));
-        BigInteger e = Utils.eGeneration(phi);
-        BigInteger d = Utils.calculateD(e, phi);
-        List<BigInteger> publicKey = new ArrayList<BigInteger>();
-        publicKey.add(e);
-        publicKey.add(n);
-        RSA.writeBigIntegerToFile(publicKey, fileName + ".pub");
-        List<BigInteger> privateKey = new ArrayList<BigInteger>();
-        privateKey.add(d);
-        privateKey.add(n);
-        RSA.writeBigIntegerToFile(privateKey, fileName + ".pri");
+        RSA rsa = keyGenerator.generate(keySize);
+        RSA.writeBigIntegerToFile(rsa.getPublicKey(), fileName + ".pub");
+        RSA.writeBigIntegerToFile(rsa.getPrivateKey(), fileName + ".pri");
         long end = System.currentTimeMillis();
         long elapsedTime = end - start;
         System.out.println("Generate key complete!");
@@ -43,119 +63,168 @@ public class Main {
 
     /**
      * Encrypt a file then write encrypted file to {filePath}.enc
+     * The file is streamed, it is never held in memory as a whole
      * 
      * @param filePath
-     * @param e - part of public key
-     * @param n - part of public key
-     * @return encrypted message
+     * @param publicKey
+     * @param format - text, bin or hybrid
+     * @return number of encrypted blocks, or of encrypted bytes for hybrid
      */
-    public static List<BigInteger> enc_file(String filePath, BigInteger e, BigInteger n)
+    public static long enc_file(String filePath, RSAPublicKey publicKey, String format)
     {
         long start = System.currentTimeMillis();
-        RSA RSA_enc = new RSA();
-        RSA_enc.initPublicKey(e, n);
-        List<BigInteger> encryption;
-        encryption = RSA_enc.encryptFile(filePath);
-        // System.out.println("encripted(decimal)    = " + Utils.bigIntegerSum(encryption));
-        RSA.writeBigIntegerToFile(encryption, filePath + ".enc");
-        long end = System.currentTimeMillis();
-        long elapsedTime = end - start;
-        System.out.println("Encrypt file complete!");
-        System.out.println("Elapsed Time: " + elapsedTime + "ms");
-        return encryption;
+        long blocks = 0;
+        try {
+            RSA RSA_enc = new RSA(publicKey);
+            RSA_enc.setBlockEngine(engine);
+            if (FORMAT_HYBRID.equals(format)) {
+                blocks = RSA_enc.encryptFileHybrid(filePath, filePath + ".enc");
+            } else {
+                blocks = RSA_enc.encryptFile(filePath, filePath + ".enc", FORMAT_BINARY.equals(format));
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        } finally {
+            long end = System.currentTimeMillis();
+            long elapsedTime = end - start;
+            System.out.println("Encrypt file complete!");
+            System.out.println("Elapsed Time: " + elapsedTime + "ms");
+        }
+        return blocks;
     }
 
     /**
      * Decrypt a file then write decrypted file to {filePath}.dec
      * 
      * @param filePath
-     * @param d - part of private key
-     * @param n - part of private key
-     * @return decrypted message
+     * @param privateKey
+     * @return number of decrypted blocks
      */
-    public static String dec_file(String filePath, BigInteger d, BigInteger n)
+    public static long dec_file(String filePath, RSAPrivateKey privateKey)
     {
         long start = System.currentTimeMillis();
-        String decrypted = "";
+        long blocks = 0;
         try {
-            List<BigInteger> encripted = RSA.readFromFile(filePath + ".enc");
-            RSA RSA_enc = new RSA();
-            RSA_enc.initPrivateKey(d, n);
-            List<BigInteger> decrypt;
-            decrypt = RSA_enc.decrypt(encripted);
-            decrypted = Utils.bigIntegerToString(decrypt);
-            // System.out.println("decrypted(plain text) = " + decrypted);
-            // System.out.println("decrypted(decimal)    = " + Utils.bigIntegerSum(decrypt));
-            RSA.writeStringToFile(decrypted, filePath + ".dec");
+            RSA RSA_enc = new RSA(privateKey);
+            RSA_enc.setBlockEngine(engine);
+            blocks = RSA_enc.decryptFile(filePath + ".enc", filePath + ".dec");
         }
         catch (NumberFormatException ex) {
             System.out.println("Invalid file!");
+        } catch (IOException ex) {
+            ex.printStackTrace();
         } finally {
             long end = System.currentTimeMillis();
             long elapsedTime = end - start;
             System.out.println("Decrypt file complete!");
             System.out.println("Elapsed Time: " + elapsedTime + "ms");
         }
-        return decrypted;
+        return blocks;
     }
 
     /**
      * Sign a file then write signed file to {filePath}.sig
      * 
      * @param filePath
-     * @param d - part of private key
-     * @param n - part of private key
-     * @return signed message
+     * @param privateKey
+     * @param format - text, bin, sha256 or sha512
+     * @return number of signed blocks
      */
-    public static List<BigInteger> sign_file(String filePath, BigInteger d, BigInteger n)
+    public static long sign_file(String filePath, RSAPrivateKey privateKey, String format)
     {
         long start = System.currentTimeMillis();
-        RSA RSA_sign= new RSA();
-        RSA_sign.initPrivateKey(d, n);
-        List<BigInteger> signed;
-        signed = RSA_sign.signFile(filePath);
-        // System.out.println("signed(decimal)    = " + Utils.bigIntegerSum(signed));
-        RSA.writeBigIntegerToFile(signed, filePath + ".sig");
-        long end = System.currentTimeMillis();
-        long elapsedTime = end - start;
-        System.out.println("Signed file complete!");
-        System.out.println("Elapsed Time: " + elapsedTime + "ms");
-        return signed;
+        long blocks = 0;
+        try {
+            RSA RSA_sign = new RSA(privateKey);
+            RSA_sign.setBlockEngine(engine);
+            if (FORMAT_SHA256.equals(format) || FORMAT_SHA512.equals(format)) {
+                RSA_sign.signFileDigest(filePath, filePath + ".sig",
+                    FORMAT_SHA512.equals(format) ? DigestSignature.SHA512 : DigestSignature.SHA256);
+                blocks = 1;
+            } else {
+                blocks = RSA_sign.signFile(filePath, filePath + ".sig", FORMAT_BINARY.equals(format));
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        } finally {
+            long end = System.currentTimeMillis();
+            long elapsedTime = end - start;
+            System.out.println("Signed file complete!");
+            System.out.println("Elapsed Time: " + elapsedTime + "ms");
+        }
+        return blocks;
     }
 
     /**
      * Verify a file then write verified file to {filePath}.veri
+     * A digest signature is checked against {filePath} itself instead
      * 
      * @param filePath
-     * @param e - part of public key
-     * @param n - part of public key
-     * @return verified message
+     * @param publicKey
+     * @return number of verified blocks
      */
-    public static String verify_file(String filePath, BigInteger e, BigInteger n)
+    public static long verify_file(String filePath, RSAPublicKey publicKey)
     {
         long start = System.currentTimeMillis();
-        String verifiedString = "";
+        long blocks = 0;
         try {
-            List<BigInteger> signed = RSA.readFromFile(filePath + ".sig");
-            RSA RSA_enc = new RSA();
-            RSA_enc.initPublicKey(e, n);
-            List<BigInteger> verified;
-            verified = RSA_enc.verify(signed);
-            verifiedString = Utils.bigIntegerToString(verified);
-            // System.out.println("verified(plain text) = " + decrypted);
-            // System.out.println("verified(decimal)    = " + Utils.bigIntegerSum(verified));
-            RSA.writeStringToFile(verifiedString, filePath + ".veri");
+            RSA RSA_enc = new RSA(publicKey);
+            RSA_enc.setBlockEngine(engine);
+            if (DigestSignature.isDigestSignature(Paths.get(filePath + ".sig"))) {
+                boolean verified = RSA_enc.verifyFileDigest(filePath, filePath + ".sig");
+                System.out.println(verified ? "Verified!" : "Not verified!");
+                blocks = verified ? 1 : 0;
+            } else {
+                blocks = RSA_enc.verifyFile(filePath + ".sig", filePath + ".veri");
+            }
         } catch (NumberFormatException ex) {
             System.out.println("Invalid file!");
+        } catch (IOException ex) {
+            ex.printStackTrace();
         } finally {
             long end = System.currentTimeMillis();
             long elapsedTime = end - start;
             System.out.println("Decrypt file complete!");
             System.out.println("Elapsed Time: " + elapsedTime + "ms");
         }
-        return verifiedString;
+        return blocks;
+    }
+
+    /**
+     * Reads a .pub file through the key cache
+     *
+     * @param keyPath
+     * @return public key, <code>null</code> if the file is not a public key
+     */
+    public static RSAPublicKey readPublicKey(String keyPath)
+    {
+        try {
+            return keyCache.getPublicKey(Paths.get(keyPath));
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Invalid key file!");
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return null;
     }
 
+    /**
+     * Reads a .pri file through the key cache
+     *
+     * @param keyPath
+     * @return private key, <code>null</code> if the file is not a private key
+     */
+    public static RSAPrivateKey readPrivateKey(String keyPath)
+    {
+        try {
+            return keyCache.getPrivateKey(Paths.get(keyPath));
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Invalid key file!");
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return null;
+    }
 
     public static void test()
     {
@@ -217,8 +286,8 @@ public class Main {
             System.out.println();
             System.out.println("1. Encrypt file: Encrypt {filePath} and write encrypted");
             System.out.println("   file to {filePath}.enc");
-            System.out.println("   Argument: filePath, publicKeyFilePath");
-            System.out.println("   Ex: 1 file.txt key.pub");
+            System.out.println("   Argument: filePath, publicKeyFilePath, [format: text|bin|hybrid]");
+            System.out.println("   Ex: 1 file.txt key.pub hybrid");
             System.out.println();
             System.out.println("2. Decrypt file: Encrypt {filePath} and write decrypted");
             System.out.println("   file to {filePath}.dec");
@@ -227,8 +296,8 @@ public class Main {
             System.out.println();
             System.out.println("3. Sign file: Encrypt {filePath} and write signed");
             System.out.println("   file to {filePath}.sig");
-            System.out.println("   Argument: filePath, keyFilePath");
-            System.out.println("   Ex: 3 file.txt key.pri");
+            System.out.println("   Argument: filePath, keyFilePath, [format: text|bin|sha256|sha512]");
+            System.out.println("   Ex: 3 file.txt key.pri sha256");
             System.out.println();
             System.out.println("4. Verify file: Encrypt {filePath} and write verified");
             System.out.println("   file to {filePath}.veri");
@@ -258,12 +327,21 @@ public class Main {
                 System.out.println("Invalid option!");
                 continue;
             }
-            else if (args.length != 3)
+            else if (args.length != 3 && !(args.length == 4 && (option == 1 || option == 3)))
+            {
+                System.out.println("Invalid option!");
+                continue;
+            }
+            String format = args.length == 4 ? args[3] : FORMAT_TEXT;
+            if (!FORMAT_TEXT.equals(format) && !FORMAT_BINARY.equals(format)
+                && !(FORMAT_HYBRID.equals(format) && option == 1)
+                && !((FORMAT_SHA256.equals(format) || FORMAT_SHA512.equals(format)) && option == 3))
             {
                 System.out.println("Invalid option!");
                 continue;
             }
-            List<BigInteger> publicKey, privateKey;
+            RSAPublicKey publicKey;
+            RSAPrivateKey privateKey;
             switch (option) {
                 case 0:
                     int keySize;
@@ -283,20 +361,24 @@ public class Main {
                     generateKey(args[1], keySize);
                     break;
                 case 1:
-                    publicKey = RSA.readFromFile(args[2]);
-                    enc_file(args[1], publicKey.get(0), publicKey.get(1));
+                    publicKey = readPublicKey(args[2]);
+                    if (publicKey == null) continue;
+                    enc_file(args[1], publicKey, format);
                     break;
                 case 2:
-                    privateKey = RSA.readFromFile(args[2]);
-                    dec_file(args[1], privateKey.get(0), privateKey.get(1));
+                    privateKey = readPrivateKey(args[2]);
+                    if (privateKey == null) continue;
+                    dec_file(args[1], privateKey);
                     break;
                 case 3:
-                    privateKey = RSA.readFromFile(args[2]);
-                    sign_file(args[1], privateKey.get(0), privateKey.get(1));
+                    privateKey = readPrivateKey(args[2]);
+                    if (privateKey == null) continue;
+                    sign_file(args[1], privateKey, format);
                     break;
                 case 4:
-                    publicKey = RSA.readFromFile(args[2]);
-                    verify_file(args[1], publicKey.get(0), publicKey.get(1));
+                    publicKey = readPublicKey(args[2]);
+                    if (publicKey == null) continue;
+                    verify_file(args[1], publicKey);
                     break;
             }
         }
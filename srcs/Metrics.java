@@ -0,0 +1,275 @@
+package srcs;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the RSA operations
+ *
+ * Recording is off unless the system property <code>rsa.metrics</code> is
+ * true or {@link #setEnabled(boolean)} turns it on; while off every probe
+ * costs one volatile read. Each operation is published as the MXBean
+ * <code>srcs:type=Metrics,name=&lt;operation&gt;</code> once recording is
+ * enabled, and <code>rsa.metrics.dump=&lt;seconds&gt;</code> prints a
+ * summary of every operation periodically, see {@link #startDump(long, PrintStream)}.
+ *
+ * Probes follow one pattern:
+ * <pre>
+ *  long start = Metrics.start();
+ *  ... operation ...
+ *  Metrics.stop(Metrics.Operation.ENCRYPT, start);
+ * </pre>
+ */
+public class Metrics {
+
+    public enum Operation {
+        ENCRYPT, DECRYPT, SIGN, VERIFY,
+        BATCH_DECRYPT,
+        PRIME_GENERATION,
+        ENCRYPT_FILE, DECRYPT_FILE, SIGN_FILE, VERIFY_FILE
+    }
+
+    /**
+     * Attributes of one operation, latencies in microseconds. Items are the
+     * blocks per call of file operations and of interleaved list operations
+     * (see {@link RSA#setInterleaved(boolean)}), the ciphertexts per batch of
+     * {@link Operation#BATCH_DECRYPT} and the Miller Rabin candidates
+     * rejected per prime of {@link Operation#PRIME_GENERATION}
+     */
+    public interface OperationMXBean {
+        long getCount();
+        double getMeanMicros();
+        long getP50Micros();
+        long getP99Micros();
+        long getMaxMicros();
+        long getBytes();
+        long getItems();
+        double getItemsPerCall();
+        long getMaxItemsPerCall();
+    }
+
+    /**
+     * Statistics of one operation
+     */
+    public static class OperationStats implements OperationMXBean {
+
+        private final Histogram latency = new Histogram();
+        private final Histogram items = new Histogram();
+        private final LongAdder bytes = new LongAdder();
+
+        @Override
+        public long getCount()
+        {
+            return latency.getCount();
+        }
+
+        @Override
+        public double getMeanMicros()
+        {
+            return latency.getMean() / 1000;
+        }
+
+        @Override
+        public long getP50Micros()
+        {
+            return latency.getPercentile(50) / 1000;
+        }
+
+        @Override
+        public long getP99Micros()
+        {
+            return latency.getPercentile(99) / 1000;
+        }
+
+        @Override
+        public long getMaxMicros()
+        {
+            return latency.getMax() / 1000;
+        }
+
+        @Override
+        public long getBytes()
+        {
+            return bytes.sum();
+        }
+
+        @Override
+        public long getItems()
+        {
+            return items.getSum();
+        }
+
+        @Override
+        public double getItemsPerCall()
+        {
+            return items.getMean();
+        }
+
+        @Override
+        public long getMaxItemsPerCall()
+        {
+            return items.getMax();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count=%d mean=%.1fus p50=%dus p99=%dus max=%dus bytes=%d items/call=%.1f",
+                getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros(),
+                getBytes(), getItemsPerCall());
+        }
+    }
+
+    private static volatile boolean enabled;
+    private static boolean registered;
+    private static ScheduledExecutorService dumper;
+
+    private final static Map<Operation, OperationStats> stats = new EnumMap<Operation, OperationStats>(Operation.class);
+
+    static {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        if (Boolean.getBoolean("rsa.metrics")) {
+            setEnabled(true);
+            long period = Long.getLong("rsa.metrics.dump", 0L);
+            if (period > 0) {
+                startDump(period, System.err);
+            }
+        }
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off, the MXBeans are registered the first time
+     * it is turned on
+     *
+     * @param on
+     */
+    public static synchronized void setEnabled(boolean on)
+    {
+        enabled = on;
+        if (on && !registered) {
+            registered = true;
+            register();
+        }
+    }
+
+    /**
+     * @return start time of a probe, 0 when recording is off
+     */
+    public static long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a call started with {@link #start()}
+     *
+     * @param operation
+     * @param start - value returned by {@link #start()}, nothing is recorded for 0
+     */
+    public static void stop(Operation operation, long start)
+    {
+        if (start != 0) {
+            stats.get(operation).latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the latency, bytes and items of a call started with {@link #start()}
+     *
+     * @param operation
+     * @param start - value returned by {@link #start()}, nothing is recorded for 0
+     * @param bytes - bytes processed by the call
+     * @param items - blocks of a file, ciphertexts of a batch, rejected candidates of a prime
+     */
+    public static void stop(Operation operation, long start, long bytes, long items)
+    {
+        if (start != 0) {
+            OperationStats s = stats.get(operation);
+            s.latency.record(System.nanoTime() - start);
+            s.bytes.add(bytes);
+            s.items.record(items);
+        }
+    }
+
+    /**
+     * @param operation
+     * @return live statistics of the operation
+     */
+    public static OperationStats get(Operation operation)
+    {
+        return stats.get(operation);
+    }
+
+    /**
+     * Prints one line per operation that was recorded at least once
+     *
+     * @param out
+     */
+    public static void dump(PrintStream out)
+    {
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                out.println("rsa " + entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #dump(PrintStream)} every period seconds on a daemon
+     * thread, replacing a previous periodic dump
+     *
+     * @param periodSeconds
+     * @param out
+     */
+    public static synchronized void startDump(long periodSeconds, final PrintStream out)
+    {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rsa-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(out), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopDump()
+    {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    private static void register()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            try {
+                ObjectName name = new ObjectName("srcs:type=Metrics,name=" + entry.getKey());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(entry.getValue(), name);
+                }
+            } catch (JMException ex) {
+                Logger.getLogger(Metrics.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+}
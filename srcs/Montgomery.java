@@ -0,0 +1,640 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Modular exponentiation in Montgomery form over 32-bit limbs
+ * https://en.wikipedia.org/wiki/Montgomery_modular_multiplication
+ *
+ * The per-modulus constants (n', R mod n, R^2 mod n) are computed once in the
+ * constructor, so one instance should be kept for every modulus that is used
+ * more than once. An instance is immutable and can be shared between threads:
+ * every exponentiation allocates its own scratch buffers and odd-power table
+ * up front and the square-and-multiply loop itself does not allocate.
+ */
+public class Montgomery {
+
+    private final static long MASK = 0xffffffffL;
+
+    /** Bases exponentiated together by {@link #modPow(BigInteger[], SlidingWindow)} */
+    public final static int LANES = 4;
+
+    private final BigInteger modulus;
+    private final int k;        // number of limbs
+    private final int[] n;      // modulus limbs, least significant first
+    private final int n0;       // -n^-1 mod 2^32
+    private final int[] one;    // R mod n, Montgomery form of 1
+    private final int[] r2;     // R^2 mod n
+
+    /**
+     * @param modulus - odd number greater than 1
+     */
+    public Montgomery(BigInteger modulus)
+    {
+        if (modulus.signum() <= 0 || !modulus.testBit(0) || modulus.equals(BigInteger.ONE)) {
+            throw new IllegalArgumentException("Montgomery modulus must be odd and greater than 1");
+        }
+        this.modulus = modulus;
+        k = (modulus.bitLength() + 31) >>> 5;
+        n = toLimbs(modulus, k);
+        n0 = -inverse32(n[0]);
+        one = toLimbs(BigInteger.ONE.shiftLeft(32 * k).mod(modulus), k);
+        r2 = toLimbs(BigInteger.ONE.shiftLeft(64 * k).mod(modulus), k);
+    }
+
+    public BigInteger getModulus()
+    {
+        return modulus;
+    }
+
+    /**
+     * @param x
+     * @param y - exponent, must not be negative
+     * @return (x power y) module n
+     */
+    public BigInteger modPow(BigInteger x, BigInteger y)
+    {
+        return modPow(x, new SlidingWindow(y));
+    }
+
+    /**
+     * Sliding-window exponentiation with a recoding prepared by the caller,
+     * the table of odd powers x, x^3, x^5, ... is the only per-call setup
+     *
+     * @param x
+     * @param y - recoded exponent
+     * @return (x power y) module n
+     */
+    public BigInteger modPow(BigInteger x, SlidingWindow y)
+    {
+        if (y.getExponent().signum() == 0) {
+            return BigInteger.ONE;
+        }
+        x = x.mod(modulus);
+        if (x.signum() == 0) {
+            return BigInteger.ZERO;
+        }
+
+        if (y.getWindow() == 1) {
+            return modPowShort(x, y.getExponent());
+        }
+
+        int[] t = new int[k + 2];
+        int[] sq = new int[2 * k + 1];
+        int[][] table = new int[1 << (y.getWindow() - 1)][];
+        table[0] = toLimbs(x, k);
+        montMul(table[0], r2, table[0], t);
+        if (table.length > 1) {
+            int[] square = new int[k];
+            montMul(table[0], table[0], square, t);
+            for (int i = 1; i < table.length; i++) {
+                table[i] = new int[k];
+                montMul(table[i - 1], square, table[i], t);
+            }
+        }
+
+        int[] acc = table[y.digit(0) >>> 1].clone();
+        for (int i = 1; i < y.size(); i++) {
+            for (int j = y.squarings(i); j > 0; j--) {
+                montSqr(acc, acc, sq);
+            }
+            montMul(acc, table[y.digit(i) >>> 1], acc, t);
+        }
+        for (int j = y.tail(); j > 0; j--) {
+            montSqr(acc, acc, sq);
+        }
+        return fromMontgomery(acc, t);
+    }
+
+    /**
+     * Exponentiates several bases by the same exponent, {@link #LANES} at a
+     * time in lockstep: the window schedule only depends on the exponent, so
+     * the lanes share every loop and each limb step updates the lanes with
+     * independent multiply-adds. The limbs are kept in structure-of-arrays
+     * form, limb j of lane l at j * LANES + l, so the carries of the lanes
+     * form separate dependency chains the CPU overlaps.
+     *
+     * @param x - bases
+     * @param y - recoded exponent shared by every base
+     * @return (x[i] power y) module n for every i
+     */
+    public BigInteger[] modPow(BigInteger[] x, SlidingWindow y)
+    {
+        BigInteger[] result = new BigInteger[x.length];
+        if (y.getExponent().signum() == 0) {
+            Arrays.fill(result, BigInteger.ONE);
+            return result;
+        }
+        for (int from = 0; from < x.length; from += LANES) {
+            int lanes = Math.min(LANES, x.length - from);
+            if (lanes == 1) {
+                result[from] = modPow(x[from], y);
+            } else {
+                modPowLanes(x, from, lanes, y, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Exponentiates x[from .. from + lanes), unused lanes repeat x[from]
+     */
+    private void modPowLanes(BigInteger[] x, int from, int lanes, SlidingWindow y, BigInteger[] result)
+    {
+        int size = k * LANES;
+        long[] t = new long[(2 * k + 1) * LANES];
+        long[] carries = new long[size];
+        long[] nl = new long[k];
+        long[] r2l = new long[size];
+        long[] base = new long[size];
+        for (int j = 0; j < k; j++) {
+            nl[j] = n[j] & MASK;
+            Arrays.fill(r2l, j * LANES, (j + 1) * LANES, r2[j] & MASK);
+        }
+        for (int l = 0; l < LANES; l++) {
+            int[] limbs = toLimbs(x[from + (l < lanes ? l : 0)].mod(modulus), k);
+            for (int j = 0; j < k; j++) {
+                base[j * LANES + l] = limbs[j] & MASK;
+            }
+        }
+        montMulLanes(base, r2l, base, t, nl);
+
+        long[][] table = new long[1 << (y.getWindow() - 1)][];
+        table[0] = base;
+        if (table.length > 1) {
+            long[] square = new long[size];
+            montSqrLanes(base, square, t, carries, nl);
+            for (int i = 1; i < table.length; i++) {
+                table[i] = new long[size];
+                montMulLanes(table[i - 1], square, table[i], t, nl);
+            }
+        }
+
+        long[] acc = table[y.digit(0) >>> 1].clone();
+        for (int i = 1; i < y.size(); i++) {
+            for (int j = y.squarings(i); j > 0; j--) {
+                montSqrLanes(acc, acc, t, carries, nl);
+            }
+            montMulLanes(acc, table[y.digit(i) >>> 1], acc, t, nl);
+        }
+        for (int j = y.tail(); j > 0; j--) {
+            montSqrLanes(acc, acc, t, carries, nl);
+        }
+
+        long[] unit = new long[size];
+        Arrays.fill(unit, 0, LANES, 1);
+        montMulLanes(acc, unit, acc, t, nl);
+        int[] limbs = new int[k];
+        for (int l = 0; l < lanes; l++) {
+            for (int j = 0; j < k; j++) {
+                limbs[j] = (int) acc[j * LANES + l];
+            }
+            result[from + l] = fromLimbs(limbs);
+        }
+    }
+
+    /**
+     * {@link #montMul(int[], int[], int[], int[])} of four lanes in
+     * structure-of-arrays form, limbs held unsigned in longs. The lanes are
+     * unrolled by hand so their carries and quotients stay in registers.
+     * out may alias a or b, t holds at least (k + 2) * 4 limbs, nl is the
+     * modulus widened to longs
+     */
+    private void montMulLanes(long[] a, long[] b, long[] out, long[] t, long[] nl)
+    {
+        int tk = k * LANES;
+        Arrays.fill(t, 0, tk + LANES, 0);
+        long n0l = nl[0];
+        for (int ai = 0; ai < tk; ai += LANES) {
+            long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+            long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+            for (int tj = 0; tj < tk; tj += LANES) {
+                long s0 = t[tj] + a0 * b[tj] + c0;
+                long s1 = t[tj + 1] + a1 * b[tj + 1] + c1;
+                long s2 = t[tj + 2] + a2 * b[tj + 2] + c2;
+                long s3 = t[tj + 3] + a3 * b[tj + 3] + c3;
+                t[tj] = s0 & MASK;
+                t[tj + 1] = s1 & MASK;
+                t[tj + 2] = s2 & MASK;
+                t[tj + 3] = s3 & MASK;
+                c0 = s0 >>> 32;
+                c1 = s1 >>> 32;
+                c2 = s2 >>> 32;
+                c3 = s3 >>> 32;
+            }
+            // h holds limbs k and k + 1 of a lane, it stays below 2^34
+            long h0 = t[tk] + c0, h1 = t[tk + 1] + c1, h2 = t[tk + 2] + c2, h3 = t[tk + 3] + c3;
+
+            long m0 = (t[0] * n0) & MASK;
+            long m1 = (t[1] * n0) & MASK;
+            long m2 = (t[2] * n0) & MASK;
+            long m3 = (t[3] * n0) & MASK;
+            c0 = (t[0] + m0 * n0l) >>> 32;
+            c1 = (t[1] + m1 * n0l) >>> 32;
+            c2 = (t[2] + m2 * n0l) >>> 32;
+            c3 = (t[3] + m3 * n0l) >>> 32;
+            for (int j = 1, tj = LANES; j < k; j++, tj += LANES) {
+                long nj = nl[j];
+                long s0 = t[tj] + m0 * nj + c0;
+                long s1 = t[tj + 1] + m1 * nj + c1;
+                long s2 = t[tj + 2] + m2 * nj + c2;
+                long s3 = t[tj + 3] + m3 * nj + c3;
+                t[tj - 4] = s0 & MASK;
+                t[tj - 3] = s1 & MASK;
+                t[tj - 2] = s2 & MASK;
+                t[tj - 1] = s3 & MASK;
+                c0 = s0 >>> 32;
+                c1 = s1 >>> 32;
+                c2 = s2 >>> 32;
+                c3 = s3 >>> 32;
+            }
+            h0 += c0;
+            h1 += c1;
+            h2 += c2;
+            h3 += c3;
+            t[tk - 4] = h0 & MASK;
+            t[tk - 3] = h1 & MASK;
+            t[tk - 2] = h2 & MASK;
+            t[tk - 1] = h3 & MASK;
+            t[tk] = h0 >>> 32;
+            t[tk + 1] = h1 >>> 32;
+            t[tk + 2] = h2 >>> 32;
+            t[tk + 3] = h3 >>> 32;
+        }
+        reduceLanes(t, 0, out, nl);
+    }
+
+    /**
+     * {@link #montSqr(int[], int[], int[])} of four lanes. The carry out of
+     * each reduction row belongs to limb i + k, which no later row uses to
+     * pick its quotient, so it is kept in carries and added in one pass at
+     * the end instead of being propagated per row. out may alias a, t holds
+     * (2k + 1) * 4 limbs and carries k * 4
+     */
+    private void montSqrLanes(long[] a, long[] out, long[] t, long[] carries, long[] nl)
+    {
+        int tk = k * LANES;
+        Arrays.fill(t, 0);
+        // cross products a[i] * a[j], i < j
+        for (int i = 0; i < k - 1; i++) {
+            int ai = i * LANES;
+            long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+            long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+            for (int aj = ai + LANES, tj = 2 * ai + LANES; aj < tk; aj += LANES, tj += LANES) {
+                long s0 = t[tj] + a0 * a[aj] + c0;
+                long s1 = t[tj + 1] + a1 * a[aj + 1] + c1;
+                long s2 = t[tj + 2] + a2 * a[aj + 2] + c2;
+                long s3 = t[tj + 3] + a3 * a[aj + 3] + c3;
+                t[tj] = s0 & MASK;
+                t[tj + 1] = s1 & MASK;
+                t[tj + 2] = s2 & MASK;
+                t[tj + 3] = s3 & MASK;
+                c0 = s0 >>> 32;
+                c1 = s1 >>> 32;
+                c2 = s2 >>> 32;
+                c3 = s3 >>> 32;
+            }
+            int top = ai + tk;
+            t[top] = c0;
+            t[top + 1] = c1;
+            t[top + 2] = c2;
+            t[top + 3] = c3;
+        }
+        // double the cross products and add the squares a[i] * a[i]
+        long u0 = 0, u1 = 0, u2 = 0, u3 = 0;
+        long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        for (int ai = 0, ti = 0; ai < tk; ai += LANES, ti += 2 * LANES) {
+            long p0 = a[ai] * a[ai];
+            long p1 = a[ai + 1] * a[ai + 1];
+            long p2 = a[ai + 2] * a[ai + 2];
+            long p3 = a[ai + 3] * a[ai + 3];
+            long s0 = (((t[ti] << 1) | u0) & MASK) + (p0 & MASK) + c0;
+            long s1 = (((t[ti + 1] << 1) | u1) & MASK) + (p1 & MASK) + c1;
+            long s2 = (((t[ti + 2] << 1) | u2) & MASK) + (p2 & MASK) + c2;
+            long s3 = (((t[ti + 3] << 1) | u3) & MASK) + (p3 & MASK) + c3;
+            u0 = t[ti] >>> 31;
+            u1 = t[ti + 1] >>> 31;
+            u2 = t[ti + 2] >>> 31;
+            u3 = t[ti + 3] >>> 31;
+            t[ti] = s0 & MASK;
+            t[ti + 1] = s1 & MASK;
+            t[ti + 2] = s2 & MASK;
+            t[ti + 3] = s3 & MASK;
+            int tn = ti + LANES;
+            s0 = (((t[tn] << 1) | u0) & MASK) + (p0 >>> 32) + (s0 >>> 32);
+            s1 = (((t[tn + 1] << 1) | u1) & MASK) + (p1 >>> 32) + (s1 >>> 32);
+            s2 = (((t[tn + 2] << 1) | u2) & MASK) + (p2 >>> 32) + (s2 >>> 32);
+            s3 = (((t[tn + 3] << 1) | u3) & MASK) + (p3 >>> 32) + (s3 >>> 32);
+            u0 = t[tn] >>> 31;
+            u1 = t[tn + 1] >>> 31;
+            u2 = t[tn + 2] >>> 31;
+            u3 = t[tn + 3] >>> 31;
+            t[tn] = s0 & MASK;
+            t[tn + 1] = s1 & MASK;
+            t[tn + 2] = s2 & MASK;
+            t[tn + 3] = s3 & MASK;
+            c0 = s0 >>> 32;
+            c1 = s1 >>> 32;
+            c2 = s2 >>> 32;
+            c3 = s3 >>> 32;
+        }
+        int t2k = 2 * tk;
+        t[t2k] = c0;
+        t[t2k + 1] = c1;
+        t[t2k + 2] = c2;
+        t[t2k + 3] = c3;
+
+        // Montgomery reduction with the row carries deferred
+        for (int ti = 0; ti < tk; ti += LANES) {
+            long m0 = (t[ti] * n0) & MASK;
+            long m1 = (t[ti + 1] * n0) & MASK;
+            long m2 = (t[ti + 2] * n0) & MASK;
+            long m3 = (t[ti + 3] * n0) & MASK;
+            c0 = 0;
+            c1 = 0;
+            c2 = 0;
+            c3 = 0;
+            for (int j = 0, tj = ti; j < k; j++, tj += LANES) {
+                long nj = nl[j];
+                long s0 = t[tj] + m0 * nj + c0;
+                long s1 = t[tj + 1] + m1 * nj + c1;
+                long s2 = t[tj + 2] + m2 * nj + c2;
+                long s3 = t[tj + 3] + m3 * nj + c3;
+                t[tj] = s0 & MASK;
+                t[tj + 1] = s1 & MASK;
+                t[tj + 2] = s2 & MASK;
+                t[tj + 3] = s3 & MASK;
+                c0 = s0 >>> 32;
+                c1 = s1 >>> 32;
+                c2 = s2 >>> 32;
+                c3 = s3 >>> 32;
+            }
+            carries[ti] = c0;
+            carries[ti + 1] = c1;
+            carries[ti + 2] = c2;
+            carries[ti + 3] = c3;
+        }
+        c0 = 0;
+        c1 = 0;
+        c2 = 0;
+        c3 = 0;
+        for (int ci = 0, tj = tk; ci < tk; ci += LANES, tj += LANES) {
+            long s0 = t[tj] + carries[ci] + c0;
+            long s1 = t[tj + 1] + carries[ci + 1] + c1;
+            long s2 = t[tj + 2] + carries[ci + 2] + c2;
+            long s3 = t[tj + 3] + carries[ci + 3] + c3;
+            t[tj] = s0 & MASK;
+            t[tj + 1] = s1 & MASK;
+            t[tj + 2] = s2 & MASK;
+            t[tj + 3] = s3 & MASK;
+            c0 = s0 >>> 32;
+            c1 = s1 >>> 32;
+            c2 = s2 >>> 32;
+            c3 = s3 >>> 32;
+        }
+        t[t2k] += c0;
+        t[t2k + 1] += c1;
+        t[t2k + 2] += c2;
+        t[t2k + 3] += c3;
+        reduceLanes(t, tk, out, nl);
+    }
+
+    /**
+     * Final conditional subtraction of every lane, the k + 1 limbs of the
+     * result start at t[offset]
+     */
+    private void reduceLanes(long[] t, int offset, long[] out, long[] nl)
+    {
+        int top = offset + k * LANES;
+        for (int l = 0; l < LANES; l++) {
+            boolean subtract = t[top + l] != 0;
+            if (!subtract) {
+                subtract = true;
+                for (int j = k - 1; j >= 0; j--) {
+                    long limb = t[offset + j * LANES + l];
+                    if (limb != nl[j]) {
+                        subtract = limb > nl[j];
+                        break;
+                    }
+                }
+            }
+            if (subtract) {
+                long borrow = 0;
+                for (int j = 0; j < k; j++) {
+                    long s = t[offset + j * LANES + l] - nl[j] - borrow;
+                    out[j * LANES + l] = s & MASK;
+                    borrow = s >>> 63;
+                }
+            } else {
+                for (int j = 0; j < k; j++) {
+                    out[j * LANES + l] = t[offset + j * LANES + l];
+                }
+            }
+        }
+    }
+
+    /**
+     * Left-to-right binary exponentiation for short exponents such as the
+     * public exponent 65537 = 2^16 + 1, which costs 16 squarings and one
+     * multiplication: no odd-power table is built
+     *
+     * @param x - reduced, not zero
+     * @param y - positive exponent
+     */
+    private BigInteger modPowShort(BigInteger x, BigInteger y)
+    {
+        int[] t = new int[k + 2];
+        int[] sq = new int[2 * k + 1];
+        int[] base = toLimbs(x, k);
+        montMul(base, r2, base, t);
+        int[] acc = base.clone();
+        for (int i = y.bitLength() - 2; i >= 0; i--) {
+            montSqr(acc, acc, sq);
+            if (y.testBit(i)) {
+                montMul(acc, base, acc, t);
+            }
+        }
+        return fromMontgomery(acc, t);
+    }
+
+    /**
+     * Converts a number out of Montgomery form: a * R^-1 mod n
+     */
+    private BigInteger fromMontgomery(int[] a, int[] t)
+    {
+        int[] unit = new int[k];
+        unit[0] = 1;
+        montMul(a, unit, a, t);
+        return fromLimbs(a);
+    }
+
+    /**
+     * out = a * b * R^-1 mod n (CIOS method). out may alias a or b,
+     * t is a scratch buffer of k + 2 limbs.
+     */
+    private void montMul(int[] a, int[] b, int[] out, int[] t)
+    {
+        Arrays.fill(t, 0);
+        for (int i = 0; i < k; i++) {
+            long ai = a[i] & MASK;
+            long c = 0;
+            for (int j = 0; j < k; j++) {
+                long s = (t[j] & MASK) + ai * (b[j] & MASK) + c;
+                t[j] = (int) s;
+                c = s >>> 32;
+            }
+            long s = (t[k] & MASK) + c;
+            t[k] = (int) s;
+            t[k + 1] = (int) (s >>> 32);
+
+            long m = (t[0] * n0) & MASK;
+            s = (t[0] & MASK) + m * (n[0] & MASK);
+            c = s >>> 32;
+            for (int j = 1; j < k; j++) {
+                s = (t[j] & MASK) + m * (n[j] & MASK) + c;
+                t[j - 1] = (int) s;
+                c = s >>> 32;
+            }
+            s = (t[k] & MASK) + c;
+            t[k - 1] = (int) s;
+            t[k] = t[k + 1] + (int) (s >>> 32);
+            t[k + 1] = 0;
+        }
+
+        if (t[k] != 0 || !lessThanModulus(t)) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long s = (t[j] & MASK) - (n[j] & MASK) - borrow;
+                out[j] = (int) s;
+                borrow = (s >>> 63);
+            }
+        } else {
+            System.arraycopy(t, 0, out, 0, k);
+        }
+    }
+
+    /**
+     * out = a * a * R^-1 mod n (SOS method): the cross products a[i] * a[j]
+     * are computed once and doubled, which saves about a quarter of the limb
+     * multiplications of {@link #montMul(int[], int[], int[], int[])}.
+     * out may alias a, t is a scratch buffer of 2k + 1 limbs.
+     */
+    private void montSqr(int[] a, int[] out, int[] t)
+    {
+        Arrays.fill(t, 0);
+        for (int i = 0; i < k - 1; i++) {
+            long ai = a[i] & MASK;
+            long c = 0;
+            for (int j = i + 1; j < k; j++) {
+                long s = (t[i + j] & MASK) + ai * (a[j] & MASK) + c;
+                t[i + j] = (int) s;
+                c = s >>> 32;
+            }
+            t[i + k] = (int) c;
+        }
+        // double the cross products
+        int top = 0;
+        for (int i = 0; i < 2 * k; i++) {
+            int limb = t[i];
+            t[i] = (limb << 1) | top;
+            top = limb >>> 31;
+        }
+        // add the squares a[i] * a[i]
+        long c = 0;
+        for (int i = 0; i < k; i++) {
+            long ai = a[i] & MASK;
+            long p = ai * ai;
+            long s = (t[2 * i] & MASK) + (p & MASK) + c;
+            t[2 * i] = (int) s;
+            s = (t[2 * i + 1] & MASK) + (p >>> 32) + (s >>> 32);
+            t[2 * i + 1] = (int) s;
+            c = s >>> 32;
+        }
+        t[2 * k] = (int) c;
+
+        // Montgomery reduction, one limb at a time
+        for (int i = 0; i < k; i++) {
+            long m = (t[i] * n0) & MASK;
+            c = 0;
+            for (int j = 0; j < k; j++) {
+                long s = (t[i + j] & MASK) + m * (n[j] & MASK) + c;
+                t[i + j] = (int) s;
+                c = s >>> 32;
+            }
+            for (int j = i + k; c != 0 && j <= 2 * k; j++) {
+                long s = (t[j] & MASK) + c;
+                t[j] = (int) s;
+                c = s >>> 32;
+            }
+        }
+
+        boolean subtract = t[2 * k] != 0;
+        if (!subtract) {
+            subtract = true;
+            for (int j = k - 1; j >= 0; j--) {
+                int cmp = Integer.compareUnsigned(t[k + j], n[j]);
+                if (cmp != 0) {
+                    subtract = cmp > 0;
+                    break;
+                }
+            }
+        }
+        if (subtract) {
+            long borrow = 0;
+            for (int j = 0; j < k; j++) {
+                long s = (t[k + j] & MASK) - (n[j] & MASK) - borrow;
+                out[j] = (int) s;
+                borrow = (s >>> 63);
+            }
+        } else {
+            System.arraycopy(t, k, out, 0, k);
+        }
+    }
+
+    private boolean lessThanModulus(int[] t)
+    {
+        for (int j = k - 1; j >= 0; j--) {
+            int cmp = Integer.compareUnsigned(t[j], n[j]);
+            if (cmp != 0) {
+                return cmp < 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return x^-1 mod 2^32 for odd x (Newton iteration)
+     */
+    private static int inverse32(int x)
+    {
+        int inv = x;
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - x * inv;
+        }
+        return inv;
+    }
+
+    private static int[] toLimbs(BigInteger value, int k)
+    {
+        byte[] bytes = value.toByteArray();
+        int[] limbs = new int[k];
+        for (int i = 0, j = bytes.length - 1; j >= 0 && i < 4 * k; i++, j--) {
+            limbs[i >>> 2] |= (bytes[j] & 0xff) << ((i & 3) << 3);
+        }
+        return limbs;
+    }
+
+    private static BigInteger fromLimbs(int[] limbs)
+    {
+        byte[] bytes = new byte[limbs.length * 4];
+        for (int i = 0; i < limbs.length; i++) {
+            int limb = limbs[limbs.length - 1 - i];
+            bytes[4 * i] = (byte) (limb >>> 24);
+            bytes[4 * i + 1] = (byte) (limb >>> 16);
+            bytes[4 * i + 2] = (byte) (limb >>> 8);
+            bytes[4 * i + 3] = (byte) limb;
+        }
+        return new BigInteger(1, bytes);
+    }
+}
@@ -0,0 +1,93 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * PKCS#1 v1.5 block encoding (RFC 8017 section 7.2 and 9.2)
+ * https://datatracker.ietf.org/doc/html/rfc8017
+ *
+ * A block of k bytes (k = modulus length) is laid out as
+ * <b>00 || BT || PS || 00 || M</b> where PS is at least 8 bytes of padding:
+ * non-zero random bytes for encryption (BT = 02), 0xFF for signatures
+ * (BT = 01). The encoding keeps leading zero bytes and the exact length of
+ * M, so any binary content round-trips.
+ */
+public class Pkcs1 {
+
+    /** Block type of signature blocks, padded with 0xFF */
+    public final static byte SIGNATURE = 1;
+    /** Block type of encryption blocks, padded with random non-zero bytes */
+    public final static byte ENCRYPTION = 2;
+
+    /** 00, BT, 00 and at least 8 bytes of padding */
+    public final static int OVERHEAD = 11;
+
+    /**
+     * @param k - modulus length in bytes
+     * @return number of message bytes one block can carry
+     */
+    public static int capacity(int k)
+    {
+        return k - OVERHEAD;
+    }
+
+    /**
+     * @param message - at most {@link #capacity(int)} bytes
+     * @param k - modulus length in bytes
+     * @param type - {@link #ENCRYPTION} or {@link #SIGNATURE}
+     * @return encoded block, smaller than any modulus of k bytes
+     */
+    public static BigInteger pad(byte[] message, int k, byte type)
+    {
+        if (message.length > capacity(k)) {
+            throw new IllegalArgumentException("Message is too long for the modulus");
+        }
+        byte[] block = new byte[k];
+        block[1] = type;
+        int separator = k - message.length - 1;
+        if (type == ENCRYPTION) {
+            byte[] padding = new byte[separator - 2];
+            RandomSource.nextBytes(padding);
+            SecureRandom random = RandomSource.current();
+            for (int i = 0; i < padding.length; i++) {
+                while (padding[i] == 0) {
+                    padding[i] = (byte) random.nextInt(256);
+                }
+            }
+            System.arraycopy(padding, 0, block, 2, padding.length);
+        } else {
+            Arrays.fill(block, 2, separator, (byte) 0xff);
+        }
+        System.arraycopy(message, 0, block, separator + 1, message.length);
+        return new BigInteger(1, block);
+    }
+
+    /**
+     * @param block - decrypted or verified block
+     * @param k - modulus length in bytes
+     * @param type - {@link #ENCRYPTION} or {@link #SIGNATURE}
+     * @return message bytes carried by the block
+     * @throws IllegalArgumentException if the block is not a valid encoding
+     */
+    public static byte[] unpad(BigInteger block, int k, byte type)
+    {
+        // the leading 00 is dropped by toByteArray, BT is small enough to need no sign byte
+        byte[] bytes = block.toByteArray();
+        if (bytes.length != k - 1 || bytes[0] != type) {
+            throw new IllegalArgumentException("Invalid padding");
+        }
+        int i = 1;
+        while (i < bytes.length && bytes[i] != 0) {
+            if (type == SIGNATURE && bytes[i] != (byte) 0xff) {
+                throw new IllegalArgumentException("Invalid padding");
+            }
+            i++;
+        }
+        if (i == bytes.length || i - 1 < 8) {
+            throw new IllegalArgumentException("Invalid padding");
+        }
+        return Arrays.copyOfRange(bytes, i + 1, bytes.length);
+    }
+}
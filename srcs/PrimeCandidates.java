@@ -0,0 +1,194 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Prime candidates of one bit length that no small prime divides
+ *
+ * Incremental sieve: a run draws one random odd start and computes its
+ * residues modulo the small primes once, then the candidates start,
+ * start + 2, ... are sieved a window at a time. For every small prime the
+ * first multiple in the window is found from the residue and its multiples
+ * are marked in a bitmap, so a candidate costs no division at all. A run
+ * outlives the candidates the caller rejects: {@link #next()} continues
+ * after the last candidate returned, and a new start is only drawn when the
+ * run has stepped over {@link #MAX_DELTA} integers or leaves the bit length.
+ *
+ * One instance per thread, it is not thread-safe.
+ */
+public class PrimeCandidates {
+
+    /**
+     * Odd primes below {@link #SIEVE_LIMIT} (about 2000 of them) that the
+     * candidates are sieved with
+     */
+    private final static int SIEVE_LIMIT = 17500;
+    private final static int[] SMALL_PRIMES = smallPrimes(SIEVE_LIMIT);
+
+    /**
+     * The small primes are grouped so that the product of each group fits an
+     * int: the residues of a start then cost one BigInteger.mod per group
+     */
+    private final static int[] GROUP_START;
+    private final static BigInteger[] GROUP_PRODUCT;
+
+    /** A run steps over at most this many integers before a new start is drawn */
+    private final static int MAX_DELTA = 1 << 20;
+    /** Odd candidates sieved at once */
+    private final static int WINDOW = 1 << 12;
+
+    static {
+        List<Integer> starts = new ArrayList<Integer>();
+        List<BigInteger> products = new ArrayList<BigInteger>();
+        int i = 0;
+        while (i < SMALL_PRIMES.length) {
+            starts.add(i);
+            long product = 1;
+            while (i < SMALL_PRIMES.length && product * SMALL_PRIMES[i] <= Integer.MAX_VALUE) {
+                product *= SMALL_PRIMES[i++];
+            }
+            products.add(BigInteger.valueOf(product));
+        }
+        GROUP_START = new int[starts.size() + 1];
+        for (int g = 0; g < starts.size(); g++) {
+            GROUP_START[g] = starts.get(g);
+        }
+        GROUP_START[starts.size()] = SMALL_PRIMES.length;
+        GROUP_PRODUCT = products.toArray(new BigInteger[0]);
+    }
+
+    private final int bits;
+    private final int maxBits;
+    private final int[] residues = new int[SMALL_PRIMES.length];
+    private final BitSet composite = new BitSet(WINDOW);
+
+    private BigInteger start;
+    private int small; // start if it fits an int, -1 otherwise
+    private int base; // delta of the first candidate of the window
+    private int index = WINDOW; // next candidate of the window to look at
+
+    /**
+     * @param bits - bit length of the candidates, as for {@link Utils#randomGeneration(int)}
+     */
+    public PrimeCandidates(int bits)
+    {
+        this.bits = bits;
+        maxBits = 8 * Math.max(1, bits / 8) - 1; // same range as randomGeneration
+    }
+
+    /**
+     * @return next candidate no small prime divides
+     */
+    public BigInteger next()
+    {
+        return next(() -> false);
+    }
+
+    /**
+     * {@link #next()} that gives up when stop turns true, checked before
+     * every window and every candidate
+     *
+     * @param stop
+     * @return candidate, or <code>null</code> once stopped
+     */
+    public BigInteger next(BooleanSupplier stop)
+    {
+        while (true) {
+            if (stop.getAsBoolean()) {
+                return null;
+            }
+            if (start == null || index == WINDOW && base + 2 * WINDOW >= MAX_DELTA) {
+                newRun();
+            } else if (index == WINDOW) {
+                sieve(base + 2 * WINDOW);
+            }
+            index = composite.nextClearBit(index);
+            if (index == WINDOW) {
+                continue;
+            }
+            BigInteger candidate = start.add(BigInteger.valueOf(base + 2 * index));
+            index++;
+            if (candidate.bitLength() > maxBits) {
+                start = null; // the run left the bit length
+                continue;
+            }
+            return candidate;
+        }
+    }
+
+    private void newRun()
+    {
+        start = Utils.randomGeneration(bits);
+        // small starts may be one of the sieving primes themselves
+        small = start.bitLength() < 31 ? start.intValue() : -1;
+        for (int g = 0; g < GROUP_PRODUCT.length; g++) {
+            int r = start.mod(GROUP_PRODUCT[g]).intValue();
+            for (int i = GROUP_START[g]; i < GROUP_START[g + 1]; i++) {
+                residues[i] = r % SMALL_PRIMES[i];
+            }
+        }
+        sieve(0);
+    }
+
+    /**
+     * Marks the candidates start + from + 2 * i, 0 &lt;= i &lt; {@link #WINDOW},
+     * that a small prime divides
+     */
+    private void sieve(int from)
+    {
+        base = from;
+        index = 0;
+        composite.clear();
+        if (small >= 0) {
+            // 1 is no prime, 0 and negative values can't occur for odd starts
+            for (int i = 0; i < WINDOW && (long) small + from + 2 * i < 3; i++) {
+                composite.set(i);
+            }
+        }
+        for (int k = 0; k < SMALL_PRIMES.length; k++) {
+            int p = SMALL_PRIMES[k];
+            // start + from + 2i = 0 mod p  <=>  i = -(residue + from) / 2 mod p
+            long minus = (p - (residues[k] + (long) from) % p) % p;
+            int i = (int) (minus * ((p + 1) / 2) % p);
+            if (small >= 0 && (long) small + from + 2L * i == p) {
+                i += p; // the prime itself is no multiple to drop
+            }
+            for (; i < WINDOW; i += p) {
+                composite.set(i);
+            }
+        }
+    }
+
+    /**
+     * Sieve of Eratosthenes
+     *
+     * @param limit
+     * @return odd primes below limit
+     */
+    private static int[] smallPrimes(int limit)
+    {
+        boolean[] composite = new boolean[limit];
+        int count = 0;
+        for (int i = 3; i < limit; i += 2) {
+            if (composite[i]) {
+                continue;
+            }
+            count++;
+            for (long j = (long) i * i; j < limit; j += 2 * i) {
+                composite[(int) j] = true;
+            }
+        }
+        int[] primes = new int[count];
+        count = 0;
+        for (int i = 3; i < limit; i += 2) {
+            if (!composite[i]) {
+                primes[count++] = i;
+            }
+        }
+        return primes;
+    }
+}
@@ -1,17 +1,31 @@
 package srcs;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,35 +38,227 @@ import java.util.logging.Logger;
 public class RSA {
 
     private final static BigInteger ONE = BigInteger.ONE;
-    private BigInteger d;
-    private BigInteger e; //part of public key - relative prime of phi 
-    private BigInteger n; //part of public key obtained with n = p*q
-    private BigInteger p; //prime
-    private BigInteger q; //prime
-    private BigInteger phi;// obtained with phi = (p-1)*(q-1)
+
+    /**
+     * First line of the decimal files written by the file and stream
+     * methods: every block but the last holds exactly getMaxBlockBytes()
+     * bytes, the last one is prefixed with a 0x01 byte recording its length.
+     * Files without it are decoded block by block as before
+     */
+    private final static String FRAMED_HEADER = "#framed";
+    private RSAPublicKey publicKey; // e, n with its modexp context
+    private RSAPrivateKey privateKey; // d, n and the CRT components with their contexts
+    private BlockEngine engine; // runs list and file operations, sequential when null
+    private boolean interleaved = "interleaved".equals(System.getProperty("rsa.modexp"));
+    private Executor stages; // runs the reader and writer of file pipelines, new threads when null
 
     RSA() {}
 
     RSA(BigInteger p, BigInteger q, BigInteger e) {
 
-        phi = (p.subtract(ONE)).multiply(q.subtract(ONE));  // phi = (p-1)*(q-1) 
-        this.e = e;
-        this.p = p;
-        this.q = q;
-        n = p.multiply(q);
-        d = Utils.calculateD(e, phi);  // d = e^-1 mod phi
+        BigInteger phi = (p.subtract(ONE)).multiply(q.subtract(ONE));  // phi = (p-1)*(q-1) 
+        BigInteger d = Utils.calculateD(e, phi);  // d = e^-1 mod phi
+        privateKey = new RSAPrivateKey(d, p, q);
+        publicKey = new RSAPublicKey(e, privateKey.getModulus());
+    }
+
+    /**
+     * @param publicKey - encrypt and verify only
+     */
+    public RSA(RSAPublicKey publicKey)
+    {
+        this(publicKey, null);
+    }
+
+    /**
+     * @param privateKey - decrypt and sign only
+     */
+    public RSA(RSAPrivateKey privateKey)
+    {
+        this(null, privateKey);
+    }
+
+    /**
+     * Wraps prebuilt keys, which may be shared with other instances and
+     * threads since they are immutable
+     *
+     * @param publicKey - <code>null</code> without public key operations
+     * @param privateKey - <code>null</code> without private key operations
+     * @throws IllegalArgumentException if both keys are missing or their moduli differ
+     */
+    public RSA(RSAPublicKey publicKey, RSAPrivateKey privateKey)
+    {
+        if (publicKey == null && privateKey == null) {
+            throw new IllegalArgumentException("At least one key is required");
+        }
+        if (publicKey != null && privateKey != null && !publicKey.getModulus().equals(privateKey.getModulus())) {
+            throw new IllegalArgumentException("Public and private key belong to different moduli");
+        }
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
     }
 
     public void initPublicKey(BigInteger e, BigInteger n)
     {
-        this.e = e;
-        this.n = n;
+        publicKey = new RSAPublicKey(e, n);
     }
 
     public void initPrivateKey(BigInteger d, BigInteger n)
     {
-        this.d = d;
-        this.n = n;
+        privateKey = new RSAPrivateKey(d, n);
+    }
+
+    /**
+     * Init private key with its Chinese Remainder Theorem components so
+     * decrypt and sign run two half-size exponentiations instead of one
+     * full-size exponentiation
+     *
+     * @param d
+     * @param n
+     * @param p
+     * @param q
+     * @param dP - d mod (p-1)
+     * @param dQ - d mod (q-1)
+     * @param qInv - q^-1 mod p
+     */
+    public void initPrivateKey(BigInteger d, BigInteger n, BigInteger p, BigInteger q,
+        BigInteger dP, BigInteger dQ, BigInteger qInv)
+    {
+        privateKey = new RSAPrivateKey(d, n, p, q, dP, dQ, qInv);
+    }
+
+    /**
+     * Init private key from the content of a .pri file, either the legacy
+     * layout (d, n) or the CRT layout (d, n, p, q, dP, dQ, qInv)
+     *
+     * @param privateKey
+     * @see RSA#getPrivateKey()
+     */
+    public void initPrivateKey(List<BigInteger> privateKey)
+    {
+        this.privateKey = RSAPrivateKey.fromList(privateKey);
+    }
+
+    /**
+     * @return modulus n, shared by the public and the private key,
+     * <code>null</code> before a key is set
+     */
+    public BigInteger getModulus()
+    {
+        if (publicKey != null) {
+            return publicKey.getModulus();
+        }
+        return privateKey != null ? privateKey.getModulus() : null;
+    }
+
+    /**
+     * Sets the engine used to process the blocks of lists and files,
+     * <code>null</code> processes them one after another on the caller thread
+     *
+     * @param engine
+     */
+    public void setBlockEngine(BlockEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    /**
+     * @param stages - runs the reader and the writer of every file and
+     * stream pipeline, see {@link BlockPipeline#BlockPipeline(BlockEngine, Executor)}
+     * @return copy sharing the keys, the block engine and the modexp backend of this instance
+     */
+    RSA withPipelineExecutor(Executor stages)
+    {
+        RSA copy = new RSA(publicKey, privateKey);
+        copy.engine = engine;
+        copy.interleaved = interleaved;
+        copy.stages = stages;
+        return copy;
+    }
+
+    /**
+     * @return public key in .pub layout: e, n
+     */
+    public List<BigInteger> getPublicKey()
+    {
+        return requirePublicKey().toList();
+    }
+
+    /**
+     * @return private key in .pri layout: d, n followed by p, q, dP, dQ, qInv
+     * when the CRT components are known
+     */
+    public List<BigInteger> getPrivateKey()
+    {
+        return requirePrivateKey().toList();
+    }
+
+    /**
+     * @return immutable public key, <code>null</code> if not set
+     */
+    public RSAPublicKey getRSAPublicKey()
+    {
+        return publicKey;
+    }
+
+    /**
+     * @return immutable private key, <code>null</code> if not set
+     */
+    public RSAPrivateKey getRSAPrivateKey()
+    {
+        return privateKey;
+    }
+
+    private RSAPublicKey requirePublicKey()
+    {
+        if (publicKey == null) {
+            throw new IllegalStateException("No public key");
+        }
+        return publicKey;
+    }
+
+    private RSAPrivateKey requirePrivateKey()
+    {
+        if (privateKey == null) {
+            throw new IllegalStateException("No private key");
+        }
+        return privateKey;
+    }
+
+    /**
+     * Selects the interleaved modexp backend for the list operations:
+     * blocks are exponentiated {@link Montgomery#LANES} at a time, see
+     * {@link Montgomery#modPow(BigInteger[], SlidingWindow)}. Off unless the
+     * system property <code>rsa.modexp</code> is <code>interleaved</code>
+     *
+     * @param interleaved
+     */
+    public void setInterleaved(boolean interleaved)
+    {
+        this.interleaved = interleaved;
+    }
+
+    /**
+     * Applies operation to every block, in parallel when a block engine is
+     * set, or lanes to slices of the blocks with the interleaved backend
+     */
+    private List<BigInteger> apply(List<BigInteger> blocks, UnaryOperator<BigInteger> operation,
+        UnaryOperator<BigInteger[]> lanes)
+    {
+        if (interleaved) {
+            if (engine != null) {
+                return engine.mapSlices(blocks, lanes);
+            }
+            return new ArrayList<BigInteger>(Arrays.asList(lanes.apply(blocks.toArray(new BigInteger[0]))));
+        }
+        if (engine != null) {
+            return engine.map(blocks, operation);
+        }
+        List<BigInteger> result = new ArrayList<BigInteger>(blocks.size());
+        for (BigInteger bigInteger : blocks) {
+            result.add(operation.apply(bigInteger));
+        }
+        return result;
     }
 
     /**
@@ -69,7 +275,10 @@ public class RSA {
         if (isModulusSmallerThanMessage(bigInteger)) {
             throw new IllegalArgumentException("Could not encrypt - message bytes are greater than modulus");
         }
-        return Utils.powerMod(bigInteger, e, n);
+        long start = Metrics.start();
+        BigInteger encrypted = requirePublicKey().modPow(bigInteger);
+        Metrics.stop(Metrics.Operation.ENCRYPT, start);
+        return encrypted;
     }
 
     /**
@@ -84,51 +293,28 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public List<BigInteger> encryptMessage(final String message) {
-        List<BigInteger> toEncrypt = new ArrayList<BigInteger>();
-        BigInteger messageBytes = new BigInteger(message.getBytes());
-        if (isModulusSmallerThanMessage(messageBytes)) {
-            toEncrypt = getValidEncryptionBlocks(Utils.splitMessages(new ArrayList<String>() {
-                {
-                    add(message);
-                }
-            }));
-        } else {
-            toEncrypt.add((messageBytes));
-        }
-        List<BigInteger> encrypted = new ArrayList<BigInteger>();
-        for (BigInteger bigInteger : toEncrypt) {
-            encrypted.add(this.encrypt(bigInteger));
-        }
-        return encrypted;
+        return apply(getValidEncryptionBlocks(message.getBytes()), this::encrypt, this::encryptLanes);
     }
 
     /**
-     * encript each line of a file using the encript method
+     * encript a file using the encript method, the raw file bytes are
+     * sliced into full-size blocks
      *
      * @param filePath path to a file containing the message to be encripted
-     * @return a BigInteger representing each encrypted file line
+     * @return a BigInteger representing each encrypted block
      * 
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public List<BigInteger> encryptFile(String filePath) {
-        BufferedReader br = null;
         FileInputStream fis = null;
-        String line = "";
-        List<BigInteger> encription = new ArrayList<BigInteger>();
+        List<BigInteger> blocks = new ArrayList<BigInteger>();
         try {
             fis = new FileInputStream(new File(filePath));
-            br = new BufferedReader(new InputStreamReader(fis, Charset.forName("UTF-8")));
-            String temp = "";
-            while ((line = br.readLine()) != null) {
-                if ("".equals(line)) {
-                    temp += "\n";
-                    continue;
-                }
-                encription.addAll(this.encryptMessage(temp + line));
-                temp = "\n";
+            ByteBlockReader reader = new ByteBlockReader(fis);
+            BigInteger block;
+            while ((block = reader.next()) != null) {
+                blocks.add(block);
             }
-            encription.addAll(this.encryptMessage(temp));
-
         } catch (IOException ex) {
             Logger.getLogger(RSA.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
@@ -136,16 +322,11 @@ public class RSA {
                 if (fis != null) {
                     fis.close();
                 }
-                if (br != null) {
-                    br.close();
-                }
-
             } catch (IOException ex) {
                 Logger.getLogger(RSA.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        return encription;
-
+        return apply(blocks, this::encrypt, this::encryptLanes);
     }
 
     /**
@@ -160,7 +341,10 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public BigInteger decrypt(BigInteger encrypted) {
-        return Utils.powerMod(encrypted, d, n);
+        long start = Metrics.start();
+        BigInteger decrypted = requirePrivateKey().modPow(encrypted);
+        Metrics.stop(Metrics.Operation.DECRYPT, start);
+        return decrypted;
     }
 
     /**
@@ -175,11 +359,7 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public List<BigInteger> decrypt(List<BigInteger> encryption) {
-        List<BigInteger> decryption = new ArrayList<BigInteger>();
-        for (BigInteger bigInteger : encryption) {
-            decryption.add(this.decrypt(bigInteger));
-        }
-        return decryption;
+        return apply(encryption, this::decrypt, this::decryptLanes);
     }
 
     /**
@@ -194,7 +374,10 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public BigInteger sign(BigInteger bigInteger) {
-        return Utils.powerMod(bigInteger, d, n);
+        long start = Metrics.start();
+        BigInteger signed = requirePrivateKey().modPow(bigInteger);
+        Metrics.stop(Metrics.Operation.SIGN, start);
+        return signed;
     }
 
     /**
@@ -209,51 +392,28 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public List<BigInteger> signMessage(final String message) {
-        List<BigInteger> toSign = new ArrayList<BigInteger>();
-        BigInteger messageBytes = new BigInteger(message.getBytes());
-        if (isModulusSmallerThanMessage(messageBytes)) {
-            toSign = getValidEncryptionBlocks(Utils.splitMessages(new ArrayList<String>() {
-                {
-                    add(message);
-                }
-            }));
-        } else {
-            toSign.add((messageBytes));
-        }
-        List<BigInteger> signed = new ArrayList<BigInteger>();
-        for (BigInteger bigInteger : toSign) {
-            signed.add(this.sign(bigInteger));
-        }
-        return signed;
+        return apply(getValidEncryptionBlocks(message.getBytes()), this::sign, this::signLanes);
     }
 
     /**
-     * Signs each line of a file using the sign method
+     * Signs a file using the sign method, the raw file bytes are sliced
+     * into full-size blocks
      * @see RSA#signMessage(java.lang.String) 
      * @param filePath
-     * @return a BigInteger representing each signed lines
+     * @return a BigInteger representing each signed block
      * 
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public List<BigInteger> signFile(String filePath) {
-        BufferedReader br = null;
         FileInputStream fis = null;
-        String line = "";
-        List<BigInteger> signedLines = new ArrayList<BigInteger>();
+        List<BigInteger> blocks = new ArrayList<BigInteger>();
         try {
             fis = new FileInputStream(new File(filePath));
-            br = new BufferedReader(new InputStreamReader(fis, Charset.forName("UTF-8")));
-            String temp = "";
-            while ((line = br.readLine()) != null) {
-                if ("".equals(line)) {
-                    temp += "\n";
-                    continue;
-                }
-                signedLines.addAll(this.signMessage(temp + line));
-                temp = "\n";
+            ByteBlockReader reader = new ByteBlockReader(fis);
+            BigInteger block;
+            while ((block = reader.next()) != null) {
+                blocks.add(block);
             }
-            signedLines.addAll(this.signMessage(temp));
-
         } catch (IOException ex) {
             Logger.getLogger(RSA.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
@@ -261,15 +421,11 @@ public class RSA {
                 if (fis != null) {
                     fis.close();
                 }
-                if (br != null) {
-                    br.close();
-                }
-
             } catch (IOException ex) {
                 Logger.getLogger(RSA.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        return signedLines;
+        return apply(blocks, this::sign, this::signLanes);
     }
 
     /**
@@ -286,7 +442,10 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public BigInteger Verify(BigInteger signedMessage) {
-        return signedMessage.modPow(e, n);
+        long start = Metrics.start();
+        BigInteger verified = requirePublicKey().modPow(signedMessage);
+        Metrics.stop(Metrics.Operation.VERIFY, start);
+        return verified;
     }
 
     /**
@@ -299,11 +458,7 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 21, 2012 7:15:19 PM
      */
     public List<BigInteger> verify(List<BigInteger> signedMessages) {
-        List<BigInteger> verification = new ArrayList<BigInteger>();
-        for (BigInteger bigInteger : signedMessages) {
-            verification.add(this.Verify(bigInteger));
-        }
-        return verification;
+        return apply(signedMessages, this::Verify, this::verifyLanes);
     }
 
     /**
@@ -321,26 +476,145 @@ public class RSA {
         return this.Verify(signedMessage).equals(message);
     }
 
+    private BigInteger[] encryptLanes(BigInteger[] blocks) {
+        for (BigInteger block : blocks) {
+            if (isModulusSmallerThanMessage(block)) {
+                throw new IllegalArgumentException("Could not encrypt - message bytes are greater than modulus");
+            }
+        }
+        long start = Metrics.start();
+        BigInteger[] encrypted = requirePublicKey().modPow(blocks);
+        Metrics.stop(Metrics.Operation.ENCRYPT, start, 0, blocks.length);
+        return encrypted;
+    }
+
+    private BigInteger[] decryptLanes(BigInteger[] blocks) {
+        long start = Metrics.start();
+        BigInteger[] decrypted = requirePrivateKey().modPow(blocks);
+        Metrics.stop(Metrics.Operation.DECRYPT, start, 0, blocks.length);
+        return decrypted;
+    }
+
+    private BigInteger[] signLanes(BigInteger[] blocks) {
+        long start = Metrics.start();
+        BigInteger[] signed = requirePrivateKey().modPow(blocks);
+        Metrics.stop(Metrics.Operation.SIGN, start, 0, blocks.length);
+        return signed;
+    }
+
+    private BigInteger[] verifyLanes(BigInteger[] blocks) {
+        long start = Metrics.start();
+        BigInteger[] verified = requirePublicKey().modPow(blocks);
+        Metrics.stop(Metrics.Operation.VERIFY, start, 0, blocks.length);
+        return verified;
+    }
+
     /**
      * ensures that blocks to encrypt are smaller than modulus
      *
-     * @param messages list of blocks to be splited at half recursively
+     * @param messages list of messages, each one is split on its own
      * @return list of valid blocs
+     * @see RSA#getValidEncryptionBlocks(byte[])
      *
      * @author Rafael M. Pestano - Oct 21, 2012 7:15:19 PM
      */
     public List<BigInteger> getValidEncryptionBlocks(List<String> messages) {
         List<BigInteger> validBlocks = new ArrayList<BigInteger>();
-        BigInteger messageBytes = new BigInteger(messages.get(0).getBytes());
-        if (!isModulusSmallerThanMessage(messageBytes)) {
-            for (String msg : messages) {
-                validBlocks.add(new BigInteger(msg.getBytes()));
-            }
-            return validBlocks;
-        } else {//message is bigger than modulus so we have o split it
-            return getValidEncryptionBlocks(Utils.splitMessages(messages));
+        for (String msg : messages) {
+            validBlocks.addAll(getValidEncryptionBlocks(msg.getBytes()));
+        }
+        return validBlocks;
+    }
+
+    /**
+     * Slices message bytes into blocks of {@link #getMaxBlockBytes()} bytes,
+     * the last one may be shorter. Every block read as an unsigned number is
+     * smaller than the modulus
+     *
+     * @param message
+     * @return list of valid blocks
+     */
+    public List<BigInteger> getValidEncryptionBlocks(byte[] message) {
+        int maxBlockBytes = getMaxBlockBytes();
+        List<BigInteger> validBlocks = new ArrayList<BigInteger>(message.length / maxBlockBytes + 1);
+        for (int from = 0; from < message.length; from += maxBlockBytes) {
+            int to = Math.min(from + maxBlockBytes, message.length);
+            validBlocks.add(new BigInteger(1, Arrays.copyOfRange(message, from, to)));
         }
+        return validBlocks;
+    }
 
+    /**
+     * @return largest number of message bytes that always fits under the
+     * modulus: (bitLength(n) - 1) / 8
+     */
+    public int getMaxBlockBytes() {
+        return publicKey != null ? publicKey.getMaxBlockBytes() : privateKey.getMaxBlockBytes();
+    }
+
+    /**
+     * Encrypts arbitrary bytes with PKCS#1 v1.5 padding, leading zero bytes
+     * and the exact length are kept
+     *
+     * @param message
+     * @return encrypted blocks
+     * @see RSA#decryptBytes(java.util.List)
+     */
+    public List<BigInteger> encryptBytes(byte[] message) {
+        return apply(paddedBlocks(message, Pkcs1.ENCRYPTION), this::encrypt, this::encryptLanes);
+    }
+
+    /**
+     * @param encryption blocks produced by {@link #encryptBytes(byte[])}
+     * @return original message bytes
+     * @throws IllegalArgumentException if a block is not padded as expected
+     */
+    public byte[] decryptBytes(List<BigInteger> encryption) {
+        return unpaddedBytes(apply(encryption, this::decrypt, this::decryptLanes), Pkcs1.ENCRYPTION);
+    }
+
+    /**
+     * Signs arbitrary bytes with PKCS#1 v1.5 signature padding
+     *
+     * @param message
+     * @return signed blocks
+     * @see RSA#verifyBytes(java.util.List)
+     */
+    public List<BigInteger> signBytes(byte[] message) {
+        return apply(paddedBlocks(message, Pkcs1.SIGNATURE), this::sign, this::signLanes);
+    }
+
+    /**
+     * @param signedMessages blocks produced by {@link #signBytes(byte[])}
+     * @return signed message bytes
+     * @throws IllegalArgumentException if a block does not verify
+     */
+    public byte[] verifyBytes(List<BigInteger> signedMessages) {
+        return unpaddedBytes(apply(signedMessages, this::Verify, this::verifyLanes), Pkcs1.SIGNATURE);
+    }
+
+    private List<BigInteger> paddedBlocks(byte[] message, byte type) {
+        int k = blockWidth();
+        int capacity = Pkcs1.capacity(k);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Modulus is too small for PKCS#1 padding");
+        }
+        List<BigInteger> blocks = new ArrayList<BigInteger>(message.length / capacity + 1);
+        for (int from = 0; from < message.length; from += capacity) {
+            int to = Math.min(from + capacity, message.length);
+            blocks.add(Pkcs1.pad(Arrays.copyOfRange(message, from, to), k, type));
+        }
+        return blocks;
+    }
+
+    private byte[] unpaddedBytes(List<BigInteger> blocks, byte type) {
+        int k = blockWidth();
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        for (BigInteger block : blocks) {
+            byte[] bytes = Pkcs1.unpad(block, k, type);
+            message.write(bytes, 0, bytes.length);
+        }
+        return message.toByteArray();
     }
 
     /**
@@ -350,22 +624,7 @@ public class RSA {
      * @author Rafael M. Pestano - Oct 21, 2012 7:15:19 PM
      */
     public List<BigInteger> messageToDecimal(final String message) {
-        List<BigInteger> toDecimal = new ArrayList<BigInteger>();
-        BigInteger messageBytes = new BigInteger(message.getBytes());
-        if (isModulusSmallerThanMessage(messageBytes)) {
-            toDecimal = getValidEncryptionBlocks(Utils.splitMessages(new ArrayList<String>() {
-                {
-                    add(message);
-                }
-            }));
-        } else {
-            toDecimal.add((messageBytes));
-        }
-        List<BigInteger> decimal = new ArrayList<BigInteger>();
-        for (BigInteger bigInteger : toDecimal) {
-            decimal.add(bigInteger);
-        }
-        return decimal;
+        return getValidEncryptionBlocks(message.getBytes());
     }
 
     /**
@@ -408,18 +667,610 @@ public class RSA {
         return decimalLines;
     }
 
+    /**
+     * Streaming version of {@link #encryptFile(java.lang.String)}: slices the
+     * message into blocks and writes one decimal encrypted block per line,
+     * without keeping the whole file in memory
+     *
+     * @param in plain text
+     * @param out encrypted blocks, flushed but not closed
+     * @return number of encrypted blocks
+     * @throws IOException
+     */
+    public long encryptStream(InputStream in, OutputStream out) throws IOException {
+        return blocksToText(in, out, this::encrypt);
+    }
+
+    /**
+     * Streaming version of {@link #decrypt(java.util.List)}: reads decimal
+     * encrypted blocks and writes the decrypted message bytes
+     *
+     * @param in encrypted blocks
+     * @param out plain text, flushed but not closed
+     * @return number of decrypted blocks
+     * @throws IOException
+     * @throws NumberFormatException if the input is not a list of decimal blocks
+     */
+    public long decryptStream(InputStream in, OutputStream out) throws IOException {
+        return blocksFromText(in, out, this::decrypt);
+    }
+
+    /**
+     * Streaming version of {@link #signFile(java.lang.String)}
+     *
+     * @param in plain text
+     * @param out signed blocks, flushed but not closed
+     * @return number of signed blocks
+     * @throws IOException
+     */
+    public long signStream(InputStream in, OutputStream out) throws IOException {
+        return blocksToText(in, out, this::sign);
+    }
+
+    /**
+     * Streaming version of {@link #verify(java.util.List)}
+     *
+     * @param in signed blocks
+     * @param out verified message bytes, flushed but not closed
+     * @return number of verified blocks
+     * @throws IOException
+     * @throws NumberFormatException if the input is not a list of decimal blocks
+     */
+    public long verifyStream(InputStream in, OutputStream out) throws IOException {
+        return blocksFromText(in, out, this::Verify);
+    }
+
+    /**
+     * Encrypts a file into another one with {@link #encryptStream(InputStream, OutputStream)}
+     *
+     * @param filePath plain text file
+     * @param encryptedPath destination of the encrypted blocks
+     * @return number of encrypted blocks
+     * @throws IOException
+     */
+    public long encryptFile(String filePath, String encryptedPath) throws IOException {
+        return encryptFile(filePath, encryptedPath, false);
+    }
+
+    /**
+     * Encrypts a file into another one
+     *
+     * @param filePath plain text file
+     * @param encryptedPath destination of the encrypted blocks
+     * @param binary <code>true</code> to write a {@link BlockContainer} of
+     * PKCS#1 v1.5 padded blocks, <code>false</code> for the decimal text format
+     * @return number of encrypted blocks
+     * @throws IOException
+     */
+    public long encryptFile(String filePath, String encryptedPath, boolean binary) throws IOException {
+        long start = Metrics.start();
+        long blocks = blocksToFile(filePath, encryptedPath, this::encrypt, binary, Pkcs1.ENCRYPTION);
+        recordFile(Metrics.Operation.ENCRYPT_FILE, start, filePath, blocks);
+        return blocks;
+    }
+
+    /**
+     * Decrypts a file of encrypted blocks, in decimal text or {@link BlockContainer}
+     * format, into another one. Hybrid containers are handed to {@link HybridCipher}
+     *
+     * @param encryptedPath file of encrypted blocks
+     * @param filePath destination of the plain text
+     * @return number of decrypted blocks, or of decrypted bytes for a hybrid container
+     * @throws IOException
+     */
+    public long decryptFile(String encryptedPath, String filePath) throws IOException {
+        long start = Metrics.start();
+        boolean hybrid = start != 0 && BlockContainer.mode(Paths.get(encryptedPath)) == BlockContainer.MODE_HYBRID;
+        long blocks = blocksFromFile(encryptedPath, filePath, this::decrypt, Pkcs1.ENCRYPTION);
+        recordFile(Metrics.Operation.DECRYPT_FILE, start, filePath, hybrid ? hybridChunks(blocks) : blocks);
+        return blocks;
+    }
+
+    /**
+     * Encrypts a file with a random AES-256 session key wrapped by this
+     * public key, see {@link HybridCipher}. {@link #decryptFile(String, String)}
+     * recognises the result
+     *
+     * @param filePath plain file
+     * @param encryptedPath destination container
+     * @return number of bytes encrypted
+     * @throws IOException
+     */
+    public long encryptFileHybrid(String filePath, String encryptedPath) throws IOException {
+        InputStream in = new FileInputStream(new File(filePath));
+        boolean complete = false;
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(encryptedPath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            long bytes;
+            try {
+                long start = Metrics.start();
+                bytes = HybridCipher.encrypt(this, new BufferedInputStream(in, HybridCipher.CHUNK_SIZE), channel);
+                recordFile(Metrics.Operation.ENCRYPT_FILE, start, filePath, hybridChunks(bytes));
+            } finally {
+                channel.close();
+            }
+            complete = true;
+            return bytes;
+        } finally {
+            in.close();
+            if (!complete) {
+                Files.deleteIfExists(Paths.get(encryptedPath));
+            }
+        }
+    }
+
+    /**
+     * Signs a file into another one with {@link #signStream(InputStream, OutputStream)}
+     *
+     * @param filePath plain text file
+     * @param signedPath destination of the signed blocks
+     * @return number of signed blocks
+     * @throws IOException
+     */
+    public long signFile(String filePath, String signedPath) throws IOException {
+        return signFile(filePath, signedPath, false);
+    }
+
+    /**
+     * Signs a file into another one
+     *
+     * @param filePath plain text file
+     * @param signedPath destination of the signed blocks
+     * @param binary <code>true</code> to write a {@link BlockContainer} of
+     * PKCS#1 v1.5 padded blocks, <code>false</code> for the decimal text format
+     * @return number of signed blocks
+     * @throws IOException
+     */
+    public long signFile(String filePath, String signedPath, boolean binary) throws IOException {
+        long start = Metrics.start();
+        long blocks = blocksToFile(filePath, signedPath, this::sign, binary, Pkcs1.SIGNATURE);
+        recordFile(Metrics.Operation.SIGN_FILE, start, filePath, blocks);
+        return blocks;
+    }
+
+    /**
+     * Verifies a file of signed blocks, in decimal text or {@link BlockContainer}
+     * format, into another one
+     *
+     * @param signedPath file of signed blocks
+     * @param filePath destination of the verified message
+     * @return number of verified blocks
+     * @throws IOException
+     */
+    public long verifyFile(String signedPath, String filePath) throws IOException {
+        long start = Metrics.start();
+        long blocks = blocksFromFile(signedPath, filePath, this::Verify, Pkcs1.SIGNATURE);
+        recordFile(Metrics.Operation.VERIFY_FILE, start, filePath, blocks);
+        return blocks;
+    }
+
+    /**
+     * @return number of AES-GCM chunks of a hybrid file of the given size
+     */
+    private static long hybridChunks(long bytes) {
+        return Math.max(1, (bytes + HybridCipher.CHUNK_SIZE - 1) / HybridCipher.CHUNK_SIZE);
+    }
+
+    /**
+     * Records a file operation with the size of its plain file
+     */
+    private static void recordFile(Metrics.Operation operation, long start, String plainPath, long blocks)
+        throws IOException {
+        if (start != 0) {
+            Metrics.stop(operation, start, Files.size(Paths.get(plainPath)), blocks);
+        }
+    }
+
+    /**
+     * Signs the digest of a file instead of its blocks: the file is streamed
+     * once through the digest and only one block is signed, see {@link DigestSignature}
+     *
+     * @param filePath file to sign
+     * @param signedPath destination of the signature
+     * @param algorithm {@link DigestSignature#SHA256} or {@link DigestSignature#SHA512}
+     * @throws IOException
+     */
+    public void signFileDigest(String filePath, String signedPath, String algorithm) throws IOException {
+        long start = Metrics.start();
+        DigestSignature.sign(this, Paths.get(filePath), Paths.get(signedPath), algorithm);
+        recordFile(Metrics.Operation.SIGN_FILE, start, filePath, 1);
+    }
+
+    /**
+     * Checks a signature written by {@link #signFileDigest(String, String, String)}
+     *
+     * @param filePath signed file
+     * @param signedPath signature
+     * @return <code>true</code> if the signature matches the file
+     * @throws IOException
+     */
+    public boolean verifyFileDigest(String filePath, String signedPath) throws IOException {
+        long start = Metrics.start();
+        boolean verified = DigestSignature.verify(this, Paths.get(filePath), Paths.get(signedPath));
+        recordFile(Metrics.Operation.VERIFY_FILE, start, filePath, 1);
+        return verified;
+    }
+
+    private long blocksToFile(String filePath, String blocksPath, UnaryOperator<BigInteger> operation,
+        boolean binary, byte paddingType) throws IOException {
+        InputStream in = new FileInputStream(new File(filePath));
+        boolean complete = false;
+        try {
+            long blocks;
+            if (!binary) {
+                OutputStream out = new FileOutputStream(new File(blocksPath));
+                try {
+                    blocks = blocksToText(in, out, operation);
+                } finally {
+                    out.close();
+                }
+            } else {
+                FileChannel channel = FileChannel.open(Paths.get(blocksPath), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    BlockContainer.Writer writer = new BlockContainer.Writer(channel, BlockContainer.MODE_PKCS1, getModulus());
+                    new BlockPipeline(engine, stages).run(new PaddedBlockReader(in, paddingType), operation, writer);
+                    blocks = writer.finish();
+                } finally {
+                    channel.close();
+                }
+            }
+            complete = true;
+            return blocks;
+        } finally {
+            in.close();
+            if (!complete) {
+                Files.deleteIfExists(Paths.get(blocksPath)); // no partial output that looks like a result
+            }
+        }
+    }
+
+    private long blocksFromFile(String blocksPath, String filePath, UnaryOperator<BigInteger> operation,
+        byte paddingType) throws IOException {
+        BlockPipeline.BlockReader reader;
+        boolean padded = false;
+        InputStream in = null;
+        FileChannel channel = null;
+        try {
+            if (BlockContainer.isContainer(Paths.get(blocksPath))) {
+                channel = FileChannel.open(Paths.get(blocksPath), StandardOpenOption.READ);
+                BlockContainer.Reader container = new BlockContainer.Reader(channel, getModulus());
+                if (container.getMode() != BlockContainer.MODE_RAW
+                    && container.getMode() != BlockContainer.MODE_PKCS1
+                    && !(container.getMode() == BlockContainer.MODE_HYBRID && paddingType == Pkcs1.ENCRYPTION)) {
+                    throw new IOException("Unsupported container mode " + container.getMode());
+                }
+                padded = container.getMode() == BlockContainer.MODE_PKCS1;
+                reader = container;
+                if (container.getMode() == BlockContainer.MODE_HYBRID && paddingType == Pkcs1.ENCRYPTION) {
+                    channel.position(0);
+                    OutputStream out = new FileOutputStream(new File(filePath));
+                    try {
+                        BufferedOutputStream bos = new BufferedOutputStream(out, HybridCipher.CHUNK_SIZE);
+                        long bytes = HybridCipher.decrypt(this, channel, bos);
+                        bos.flush();
+                        return bytes;
+                    } finally {
+                        out.close();
+                    }
+                }
+            } else {
+                in = new FileInputStream(new File(blocksPath));
+                OutputStream out = new FileOutputStream(new File(filePath));
+                try {
+                    return blocksFromText(in, out, operation);
+                } finally {
+                    out.close();
+                }
+            }
+            OutputStream out = new FileOutputStream(new File(filePath));
+            try {
+                BufferedOutputStream bos = new BufferedOutputStream(out);
+                BlockPipeline.BlockWriter writer = padded ? new UnpaddingBlockWriter(bos, paddingType)
+                    : new ByteBlockWriter(bos);
+                long blocks = new BlockPipeline(engine, stages).run(reader, operation, writer);
+                bos.flush();
+                return blocks;
+            } finally {
+                out.close();
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks of a byte stream as decimal lines after {@link #FRAMED_HEADER}
+     */
+    private long blocksToText(InputStream in, OutputStream out, UnaryOperator<BigInteger> operation)
+        throws IOException {
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, Charset.forName("UTF-8")));
+        bw.write(FRAMED_HEADER);
+        bw.write('\n');
+        long blocks = new BlockPipeline(engine, stages).run(new FramedBlockReader(in), operation, new DecimalBlockWriter(bw));
+        bw.flush();
+        return blocks;
+    }
+
+    /**
+     * Writes the message bytes of decimal lines, framed or in the older
+     * format without {@link #FRAMED_HEADER}
+     */
+    private long blocksFromText(InputStream in, OutputStream out, UnaryOperator<BigInteger> operation)
+        throws IOException {
+        DecimalBlockReader reader = new DecimalBlockReader(in);
+        BufferedOutputStream bos = new BufferedOutputStream(out);
+        long blocks;
+        if (reader.isFramed()) {
+            FramedBlockWriter writer = new FramedBlockWriter(bos);
+            blocks = new BlockPipeline(engine, stages).run(reader, operation, writer);
+            writer.finish();
+        } else {
+            blocks = new BlockPipeline(engine, stages).run(reader, operation, new ByteBlockWriter(bos));
+        }
+        bos.flush();
+        return blocks;
+    }
+
+    /**
+     * Slices a byte stream into blocks of {@link #getMaxBlockBytes()} bytes
+     * in one pass, the last block may be shorter
+     */
+    private class ByteBlockReader implements BlockPipeline.BlockReader {
+
+        private final InputStream in;
+        private final int maxBlockBytes;
+
+        ByteBlockReader(InputStream in) {
+            this.in = in;
+            maxBlockBytes = getMaxBlockBytes();
+        }
+
+        @Override
+        public BigInteger next() throws IOException {
+            byte[] block = in.readNBytes(maxBlockBytes);
+            if (block.length == 0) {
+                return null;
+            }
+            return new BigInteger(1, block);
+        }
+    }
+
+    /**
+     * Slices a byte stream like {@link ByteBlockReader} and prefixes the last
+     * block with a 0x01 byte, so that leading zero bytes survive decoding. The
+     * last block carries fewer than {@link #getMaxBlockBytes()} bytes and stays
+     * below the modulus with its prefix: a stream ending on a full block gets
+     * an extra last block of no bytes
+     */
+    private class FramedBlockReader implements BlockPipeline.BlockReader {
+
+        private final InputStream in;
+        private final int maxBlockBytes;
+        private boolean done;
+
+        FramedBlockReader(InputStream in) {
+            this.in = in;
+            maxBlockBytes = getMaxBlockBytes();
+        }
+
+        @Override
+        public BigInteger next() throws IOException {
+            if (done) {
+                return null;
+            }
+            byte[] block = in.readNBytes(maxBlockBytes);
+            if (block.length == maxBlockBytes) {
+                return new BigInteger(1, block);
+            }
+            done = true;
+            byte[] last = new byte[block.length + 1];
+            last[0] = 1;
+            System.arraycopy(block, 0, last, 1, block.length);
+            return new BigInteger(1, last);
+        }
+    }
+
+    /**
+     * Writes the message bytes of the blocks read by {@link FramedBlockReader}:
+     * every block is left-padded to {@link #getMaxBlockBytes()} bytes except
+     * the last one, held back until {@link #finish()} strips its prefix
+     */
+    private class FramedBlockWriter implements BlockPipeline.BlockWriter {
+
+        private final OutputStream out;
+        private final int maxBlockBytes;
+        private final byte[] padded;
+        private BigInteger last;
+
+        FramedBlockWriter(OutputStream out) {
+            this.out = out;
+            maxBlockBytes = getMaxBlockBytes();
+            padded = new byte[maxBlockBytes];
+        }
+
+        @Override
+        public void write(BigInteger block) throws IOException {
+            if (last != null) {
+                if (last.bitLength() > 8 * maxBlockBytes) {
+                    throw new IOException("Block is too large - wrong key or corrupted file");
+                }
+                byte[] bytes = Utils.toBytes(last);
+                Arrays.fill(padded, 0, maxBlockBytes - bytes.length, (byte) 0);
+                System.arraycopy(bytes, 0, padded, maxBlockBytes - bytes.length, bytes.length);
+                out.write(padded);
+            }
+            last = block;
+        }
+
+        /**
+         * Writes the bytes of the last block
+         *
+         * @throws IOException if the last block is missing or has no valid prefix
+         */
+        void finish() throws IOException {
+            byte[] bytes = last == null ? null : Utils.toBytes(last);
+            if (bytes == null || bytes[0] != 1 || bytes.length > maxBlockBytes) {
+                throw new IOException("Missing or invalid last block - wrong key or corrupted file");
+            }
+            out.write(bytes, 1, bytes.length - 1);
+        }
+    }
+
+    /**
+     * Slices a byte stream into PKCS#1 v1.5 encoded blocks, each one carrying
+     * up to {@link Pkcs1#capacity(int)} bytes of the stream
+     */
+    private class PaddedBlockReader implements BlockPipeline.BlockReader {
+
+        private final InputStream in;
+        private final byte type;
+        private final int k;
+
+        PaddedBlockReader(InputStream in, byte type) {
+            this.in = in;
+            this.type = type;
+            k = blockWidth();
+            if (Pkcs1.capacity(k) < 1) {
+                throw new IllegalArgumentException("Modulus is too small for PKCS#1 padding");
+            }
+        }
+
+        @Override
+        public BigInteger next() throws IOException {
+            byte[] message = in.readNBytes(Pkcs1.capacity(k));
+            if (message.length == 0) {
+                return null;
+            }
+            return Pkcs1.pad(message, k, type);
+        }
+    }
+
+    /**
+     * Writes the message bytes carried by PKCS#1 v1.5 encoded blocks
+     */
+    private class UnpaddingBlockWriter implements BlockPipeline.BlockWriter {
+
+        private final OutputStream out;
+        private final byte type;
+        private final int k;
+
+        UnpaddingBlockWriter(OutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+            k = blockWidth();
+        }
+
+        @Override
+        public void write(BigInteger block) throws IOException {
+            try {
+                out.write(Pkcs1.unpad(block, k, type));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid block padding - wrong key or corrupted file", ex);
+            }
+        }
+    }
+
+    /**
+     * Reads whitespace separated decimal blocks, the format of
+     * {@link #writeBigIntegerToFile(java.util.List, java.lang.String)},
+     * optionally preceded by {@link #FRAMED_HEADER}
+     */
+    private static class DecimalBlockReader implements BlockPipeline.BlockReader {
+
+        private final BufferedReader br;
+        private final Deque<BigInteger> pending = new ArrayDeque<BigInteger>();
+        private final boolean framed;
+
+        DecimalBlockReader(InputStream in) throws IOException {
+            br = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+            String first = br.readLine();
+            framed = FRAMED_HEADER.equals(first);
+            if (first != null && !framed) {
+                parse(first);
+            }
+        }
+
+        boolean isFramed() {
+            return framed;
+        }
+
+        @Override
+        public BigInteger next() throws IOException {
+            while (pending.isEmpty()) {
+                String line = br.readLine();
+                if (line == null) {
+                    return null;
+                }
+                parse(line);
+            }
+            return pending.poll();
+        }
+
+        private void parse(String line) {
+            for (String w : line.split("\\s")) {
+                if (!"".equals(w)) {
+                    pending.add(new BigInteger(w));
+                }
+            }
+        }
+    }
+
+    private static class DecimalBlockWriter implements BlockPipeline.BlockWriter {
+
+        private final BufferedWriter bw;
+
+        DecimalBlockWriter(BufferedWriter bw) {
+            this.bw = bw;
+        }
+
+        @Override
+        public void write(BigInteger block) throws IOException {
+            bw.write(block.toString());
+            bw.write('\n');
+        }
+    }
+
+    /**
+     * Writes the message bytes of each block, as {@link Utils#bigIntegerToString(java.util.List)} does
+     * @see Utils#toBytes(java.math.BigInteger)
+     */
+    private static class ByteBlockWriter implements BlockPipeline.BlockWriter {
+
+        private final OutputStream out;
+
+        ByteBlockWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(BigInteger block) throws IOException {
+            out.write(Utils.toBytes(block));
+        }
+    }
+
     private boolean isModulusSmallerThanMessage(BigInteger messageBytes) {
-        return n.compareTo(messageBytes) == -1;
+        return getModulus().compareTo(messageBytes) == -1;
+    }
+
+    private int blockWidth() {
+        return publicKey != null ? publicKey.getBlockWidth() : privateKey.getBlockWidth();
     }
 
     @Override
     public String toString() {
         String s = "";
-        s += "p                     = " + p + "\n";
-        s += "q                     = " + q + "\n";
-        s += "e                     = " + e + "\n";
-        s += "private               = " + d + "\n";
-        s += "modulus               = " + n;
+        s += "p                     = " + (privateKey == null ? null : privateKey.getP()) + "\n";
+        s += "q                     = " + (privateKey == null ? null : privateKey.getQ()) + "\n";
+        s += "e                     = " + (publicKey == null ? null : publicKey.getExponent()) + "\n";
+        s += "private               = " + (privateKey == null ? null : privateKey.getExponent()) + "\n";
+        s += "modulus               = " + getModulus();
         return s;
     }
 
@@ -0,0 +1,234 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable RSA private key with its modexp context
+ *
+ * Holds d and n and, when the primes are known, the Chinese Remainder
+ * Theorem components p, q, dP, dQ, qInv. The Montgomery constants of every
+ * modulus and the sliding-window recoding of every exponent are computed
+ * once in the constructor; the key is immutable and can be shared by any
+ * number of threads without locking.
+ */
+public final class RSAPrivateKey {
+
+    private final static BigInteger ONE = BigInteger.ONE;
+
+    private final BigInteger d;
+    private final BigInteger n;
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger dP;   // d mod (p-1)
+    private final BigInteger dQ;   // d mod (q-1)
+    private final BigInteger qInv; // q^-1 mod p
+    private final Montgomery nContext;
+    private final Montgomery pContext;
+    private final Montgomery qContext;
+    private final SlidingWindow dWindow;
+    private final SlidingWindow dPWindow;
+    private final SlidingWindow dQWindow;
+    private final int maxBlockBytes;
+    private final int blockWidth;
+
+    /**
+     * Key without CRT components, every operation is a full-size exponentiation
+     *
+     * @param d
+     * @param n
+     */
+    public RSAPrivateKey(BigInteger d, BigInteger n)
+    {
+        this(d, n, null, null, null, null, null);
+    }
+
+    /**
+     * Key with its CRT components derived from the primes
+     *
+     * @param d
+     * @param p
+     * @param q
+     */
+    public RSAPrivateKey(BigInteger d, BigInteger p, BigInteger q)
+    {
+        this(d, p.multiply(q), p, q, d.mod(p.subtract(ONE)), d.mod(q.subtract(ONE)), q.modInverse(p));
+    }
+
+    /**
+     * Key with its CRT components, decrypt and sign run two half-size
+     * exponentiations instead of one full-size exponentiation
+     *
+     * @param d
+     * @param n
+     * @param p - <code>null</code> when the CRT components are unknown
+     * @param q
+     * @param dP - d mod (p-1)
+     * @param dQ - d mod (q-1)
+     * @param qInv - q^-1 mod p
+     */
+    public RSAPrivateKey(BigInteger d, BigInteger n, BigInteger p, BigInteger q,
+        BigInteger dP, BigInteger dQ, BigInteger qInv)
+    {
+        if (d == null || n == null) {
+            throw new IllegalArgumentException("Private exponent and modulus are required");
+        }
+        this.d = d;
+        this.n = n;
+        nContext = new Montgomery(n);
+        dWindow = new SlidingWindow(d);
+        maxBlockBytes = RSAPublicKey.maxBlockBytes(n);
+        blockWidth = BlockContainer.blockWidth(n);
+        if (p != null && q != null && dP != null && dQ != null && qInv != null) {
+            this.p = p;
+            this.q = q;
+            this.dP = dP;
+            this.dQ = dQ;
+            this.qInv = qInv;
+            pContext = new Montgomery(p);
+            qContext = new Montgomery(q);
+            dPWindow = new SlidingWindow(dP);
+            dQWindow = new SlidingWindow(dQ);
+        } else {
+            this.p = null;
+            this.q = null;
+            this.dP = null;
+            this.dQ = null;
+            this.qInv = null;
+            pContext = null;
+            qContext = null;
+            dPWindow = null;
+            dQWindow = null;
+        }
+    }
+
+    /**
+     * @param privateKey - content of a .pri file, either the legacy layout
+     * (d, n) or the CRT layout (d, n, p, q, dP, dQ, qInv)
+     * @return private key
+     * @see #toList()
+     */
+    public static RSAPrivateKey fromList(List<BigInteger> privateKey)
+    {
+        if (privateKey.size() >= 7) {
+            return new RSAPrivateKey(privateKey.get(0), privateKey.get(1), privateKey.get(2),
+                privateKey.get(3), privateKey.get(4), privateKey.get(5), privateKey.get(6));
+        }
+        if (privateKey.size() < 2) {
+            throw new IllegalArgumentException("Private key needs d and n");
+        }
+        return new RSAPrivateKey(privateKey.get(0), privateKey.get(1));
+    }
+
+    /**
+     * @return private key in .pri layout: d, n followed by p, q, dP, dQ, qInv
+     * when the CRT components are known
+     */
+    public List<BigInteger> toList()
+    {
+        List<BigInteger> privateKey = new ArrayList<BigInteger>(7);
+        privateKey.add(d);
+        privateKey.add(n);
+        if (isCrtKey()) {
+            privateKey.add(p);
+            privateKey.add(q);
+            privateKey.add(dP);
+            privateKey.add(dQ);
+            privateKey.add(qInv);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Private key operation <b>x^d mod n</b>, using the CRT split with Garner
+     * recombination when p and q are known: <ul> <li>m1 = x^dP mod p <li>m2 =
+     * x^dQ mod q <li>h = qInv * (m1 - m2) mod p <li>m = m2 + h * q </ul>
+     *
+     * @param x - smaller than n
+     * @return x^d mod n
+     */
+    public BigInteger modPow(BigInteger x)
+    {
+        if (!isCrtKey()) {
+            return nContext.modPow(x, dWindow);
+        }
+        BigInteger m1 = pContext.modPow(x, dPWindow);
+        BigInteger m2 = qContext.modPow(x, dQWindow);
+        BigInteger h = qInv.multiply(m1.subtract(m2)).mod(p);
+        return m2.add(h.multiply(q));
+    }
+
+    /**
+     * {@link #modPow(BigInteger)} of several blocks, the exponentiations
+     * modulo n, or modulo p and q, run {@link Montgomery#LANES} at a time
+     *
+     * @param x - every element smaller than n
+     * @return x[i]^d mod n
+     */
+    public BigInteger[] modPow(BigInteger[] x)
+    {
+        if (!isCrtKey()) {
+            return nContext.modPow(x, dWindow);
+        }
+        BigInteger[] m1 = pContext.modPow(x, dPWindow);
+        BigInteger[] m2 = qContext.modPow(x, dQWindow);
+        BigInteger[] m = new BigInteger[x.length];
+        for (int i = 0; i < x.length; i++) {
+            BigInteger h = qInv.multiply(m1[i].subtract(m2[i])).mod(p);
+            m[i] = m2[i].add(h.multiply(q));
+        }
+        return m;
+    }
+
+    /**
+     * @return <code>true</code> if p, q, dP, dQ and qInv are known
+     */
+    public boolean isCrtKey()
+    {
+        return p != null;
+    }
+
+    public BigInteger getExponent()
+    {
+        return d;
+    }
+
+    public BigInteger getModulus()
+    {
+        return n;
+    }
+
+    /**
+     * @return p, <code>null</code> without CRT components
+     */
+    public BigInteger getP()
+    {
+        return p;
+    }
+
+    /**
+     * @return q, <code>null</code> without CRT components
+     */
+    public BigInteger getQ()
+    {
+        return q;
+    }
+
+    /**
+     * @return largest number of message bytes that always fits under the
+     * modulus: (bitLength(n) - 1) / 8
+     */
+    public int getMaxBlockBytes()
+    {
+        return maxBlockBytes;
+    }
+
+    /**
+     * @return bytes of an encoded block, see {@link BlockContainer#blockWidth(BigInteger)}
+     */
+    public int getBlockWidth()
+    {
+        return blockWidth;
+    }
+}
@@ -0,0 +1,118 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable RSA public key (e, n) with its modexp context
+ *
+ * The Montgomery constants of n, the sliding-window recoding of e and the
+ * block sizes are computed once in the constructor. Every field is final
+ * and the contexts are themselves immutable, so one instance can be shared
+ * by any number of threads without locking.
+ */
+public final class RSAPublicKey {
+
+    private final BigInteger e;
+    private final BigInteger n;
+    private final Montgomery nContext;
+    private final SlidingWindow eWindow;
+    private final int maxBlockBytes;
+    private final int blockWidth;
+
+    /**
+     * @param e - public exponent
+     * @param n - modulus, odd
+     */
+    public RSAPublicKey(BigInteger e, BigInteger n)
+    {
+        if (e == null || n == null) {
+            throw new IllegalArgumentException("Public exponent and modulus are required");
+        }
+        this.e = e;
+        this.n = n;
+        nContext = new Montgomery(n);
+        eWindow = new SlidingWindow(e);
+        maxBlockBytes = maxBlockBytes(n);
+        blockWidth = BlockContainer.blockWidth(n);
+    }
+
+    /**
+     * @param publicKey - content of a .pub file: e, n
+     * @return public key
+     * @see #toList()
+     */
+    public static RSAPublicKey fromList(List<BigInteger> publicKey)
+    {
+        if (publicKey.size() < 2) {
+            throw new IllegalArgumentException("Public key needs e and n");
+        }
+        return new RSAPublicKey(publicKey.get(0), publicKey.get(1));
+    }
+
+    /**
+     * @return public key in .pub layout: e, n
+     */
+    public List<BigInteger> toList()
+    {
+        List<BigInteger> publicKey = new ArrayList<BigInteger>(2);
+        publicKey.add(e);
+        publicKey.add(n);
+        return publicKey;
+    }
+
+    /**
+     * @param x - smaller than n
+     * @return x^e mod n
+     */
+    public BigInteger modPow(BigInteger x)
+    {
+        return nContext.modPow(x, eWindow);
+    }
+
+    /**
+     * @param x - every element smaller than n
+     * @return x[i]^e mod n, exponentiated {@link Montgomery#LANES} at a time
+     */
+    public BigInteger[] modPow(BigInteger[] x)
+    {
+        return nContext.modPow(x, eWindow);
+    }
+
+    public BigInteger getExponent()
+    {
+        return e;
+    }
+
+    public BigInteger getModulus()
+    {
+        return n;
+    }
+
+    /**
+     * @return largest number of message bytes that always fits under the
+     * modulus: (bitLength(n) - 1) / 8
+     */
+    public int getMaxBlockBytes()
+    {
+        return maxBlockBytes;
+    }
+
+    /**
+     * @return bytes of an encoded block, see {@link BlockContainer#blockWidth(BigInteger)}
+     */
+    public int getBlockWidth()
+    {
+        return blockWidth;
+    }
+
+    static int maxBlockBytes(BigInteger n)
+    {
+        int bytes = (n.bitLength() - 1) / 8;
+        if (bytes == 0) {
+            throw new IllegalArgumentException("Modulus is too small to hold a message byte");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,150 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.function.Supplier;
+
+/**
+ * Random numbers for key generation, Miller Rabin bases and padding
+ *
+ * Every thread gets its own generator, created once by the factory, so
+ * threads neither reseed per call nor contend on one shared instance. Bytes
+ * are drawn from the generator in bulk and served from a per-thread buffer.
+ *
+ * The factory defaults to <code>new SecureRandom()</code>, or to
+ * <code>SecureRandom.getInstance(algorithm)</code> when the system property
+ * <code>rsa.random</code> names an algorithm. Tests can plug in a seeded,
+ * deterministic generator with {@link #setFactory(Supplier)}.
+ */
+public class RandomSource {
+
+    private final static int BUFFER_SIZE = 4096;
+
+    private static volatile Supplier<SecureRandom> factory = defaultFactory();
+
+    private final static ThreadLocal<Source> sources = new ThreadLocal<Source>();
+
+    /**
+     * Replaces the factory, every thread creates a new generator with it on
+     * its next draw
+     *
+     * @param newFactory - <code>null</code> restores the default factory
+     */
+    public static void setFactory(Supplier<SecureRandom> newFactory)
+    {
+        // always a new instance, so threads notice the change even when the
+        // same factory is installed again
+        factory = newFactory != null ? newFactory::get : defaultFactory();
+    }
+
+    /**
+     * @return generator of the calling thread, don't share it with other threads
+     */
+    public static SecureRandom current()
+    {
+        return source().random;
+    }
+
+    /**
+     * Fills bytes from the buffer of the calling thread
+     *
+     * @param bytes
+     */
+    public static void nextBytes(byte[] bytes)
+    {
+        Source source = source();
+        if (bytes.length >= BUFFER_SIZE) {
+            source.random.nextBytes(bytes);
+            return;
+        }
+        int copied = 0;
+        while (copied < bytes.length) {
+            if (source.position == BUFFER_SIZE) {
+                source.random.nextBytes(source.buffer);
+                source.position = 0;
+            }
+            int length = Math.min(bytes.length - copied, BUFFER_SIZE - source.position);
+            System.arraycopy(source.buffer, source.position, bytes, copied, length);
+            source.position += length;
+            copied += length;
+        }
+    }
+
+    /**
+     * @param bytes - length of the number in bytes
+     * @return uniformly distributed odd number of at most 8 * bytes - 1 bits,
+     * the top bit is masked off rather than redrawn
+     */
+    public static BigInteger nextOdd(int bytes)
+    {
+        byte[] value = new byte[bytes];
+        nextBytes(value);
+        value[0] &= 0x7f;
+        value[bytes - 1] |= 1;
+        return new BigInteger(value);
+    }
+
+    /**
+     * @param min
+     * @param max - at least min
+     * @return uniformly distributed number of [min, max]
+     */
+    public static BigInteger nextBetween(BigInteger min, BigInteger max)
+    {
+        BigInteger range = max.subtract(min).add(BigInteger.ONE);
+        int bits = range.bitLength();
+        byte[] value = new byte[(bits + 7) / 8];
+        int excess = value.length * 8 - bits;
+        BigInteger r;
+        do {
+            nextBytes(value);
+            value[0] &= 0xff >>> excess;
+            r = new BigInteger(1, value);
+        } while (r.compareTo(range) >= 0);
+        return r.add(min);
+    }
+
+    private static Source source()
+    {
+        Supplier<SecureRandom> current = factory;
+        Source source = sources.get();
+        if (source == null || source.factory != current) {
+            source = new Source(current);
+            sources.set(source);
+        }
+        return source;
+    }
+
+    private static Supplier<SecureRandom> defaultFactory()
+    {
+        final String algorithm = System.getProperty("rsa.random");
+        if (algorithm == null) {
+            return SecureRandom::new;
+        }
+        return () -> {
+            try {
+                return SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("Unknown rsa.random algorithm " + algorithm, ex);
+            }
+        };
+    }
+
+    /**
+     * Generator of one thread with its buffer of unused bytes
+     */
+    private static class Source {
+
+        private final Supplier<SecureRandom> factory;
+        private final SecureRandom random;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = BUFFER_SIZE;
+
+        Source(Supplier<SecureRandom> factory)
+        {
+            this.factory = factory;
+            random = factory.get();
+        }
+    }
+}
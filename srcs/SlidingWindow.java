@@ -0,0 +1,113 @@
+package srcs;
+
+import java.math.BigInteger;
+
+/**
+ * Sliding-window recoding of an exponent
+ * https://en.wikipedia.org/wiki/Exponentiation_by_squaring#Sliding-window_method
+ *
+ * The exponent is split once into odd windows of at most {@link #getWindow()}
+ * bits, each preceded by the number of squarings it needs. The recoding only
+ * depends on the exponent, so a key builds it once for e, d, dP and dQ and
+ * every block reuses it; only the table of odd powers of the base is built
+ * per exponentiation.
+ *
+ * @see Montgomery#modPow(BigInteger, SlidingWindow)
+ */
+public class SlidingWindow {
+
+    private final BigInteger exponent;
+    private final int window;
+    private final int[] digits;     // odd window values, most significant first
+    private final int[] squarings;  // squarings done before multiplying by digits[i]
+    private final int tail;         // squarings after the last window
+
+    /**
+     * @param exponent - must not be negative
+     */
+    public SlidingWindow(BigInteger exponent)
+    {
+        if (exponent.signum() < 0) {
+            throw new ArithmeticException("Negative exponent");
+        }
+        this.exponent = exponent;
+        window = windowSize(exponent.bitLength());
+
+        int count = 0;
+        int[] d = new int[exponent.bitLength()];
+        int[] s = new int[exponent.bitLength()];
+        int zeros = 0;
+        int i = exponent.bitLength() - 1;
+        while (i >= 0) {
+            if (!exponent.testBit(i)) {
+                zeros++;
+                i--;
+                continue;
+            }
+            int low = Math.max(i - window + 1, 0);
+            while (!exponent.testBit(low)) {
+                low++;
+            }
+            int value = 0;
+            for (int j = i; j >= low; j--) {
+                value = (value << 1) | (exponent.testBit(j) ? 1 : 0);
+            }
+            d[count] = value;
+            s[count] = zeros + (i - low + 1);
+            count++;
+            zeros = 0;
+            i = low - 1;
+        }
+        digits = new int[count];
+        squarings = new int[count];
+        System.arraycopy(d, 0, digits, 0, count);
+        System.arraycopy(s, 0, squarings, 0, count);
+        tail = zeros;
+    }
+
+    /**
+     * Window size for an exponent of the given bit length, the larger
+     * the exponent the more the odd-power table pays off
+     *
+     * @param bitLength
+     * @return window size in bits
+     */
+    public static int windowSize(int bitLength)
+    {
+        if (bitLength > 671) return 6;
+        if (bitLength > 239) return 5;
+        if (bitLength > 79) return 4;
+        if (bitLength > 23) return 3;
+        return 1;
+    }
+
+    public BigInteger getExponent()
+    {
+        return exponent;
+    }
+
+    public int getWindow()
+    {
+        return window;
+    }
+
+    int size()
+    {
+        return digits.length;
+    }
+
+    int digit(int i)
+    {
+        return digits[i];
+    }
+
+    int squarings(int i)
+    {
+        return squarings[i];
+    }
+
+    int tail()
+    {
+        return tail;
+    }
+}
@@ -1,38 +1,17 @@
 package srcs;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.security.SecureRandom;
+import java.util.function.BooleanSupplier;
 
 
 public class Utils {
 
-    private final static BigInteger first_prime_list[] = {
-        new BigInteger("2"), new BigInteger("3"), new BigInteger("5"),
-        new BigInteger("7"), new BigInteger("11"), new BigInteger("13"),
-        new BigInteger("17"), new BigInteger("19"), new BigInteger("23"),
-        new BigInteger("29"), new BigInteger("31"), new BigInteger("37"),
-        new BigInteger("41"), new BigInteger("43"), new BigInteger("47"),
-        new BigInteger("53"), new BigInteger("59"), new BigInteger("61"),
-        new BigInteger("67"), new BigInteger("71"), new BigInteger("73"),
-        new BigInteger("79"), new BigInteger("83"), new BigInteger("89"),
-        new BigInteger("97"), new BigInteger("101"), new BigInteger("103"),
-        new BigInteger("107"), new BigInteger("109"), new BigInteger("113"),
-        new BigInteger("127"), new BigInteger("131"), new BigInteger("137"),
-        new BigInteger("139"), new BigInteger("149"), new BigInteger("151"),
-        new BigInteger("157"), new BigInteger("163"), new BigInteger("167"),
-        new BigInteger("173"), new BigInteger("179"), new BigInteger("181"),
-        new BigInteger("191"), new BigInteger("193"), new BigInteger("197"),
-        new BigInteger("199"), new BigInteger("211"), new BigInteger("223"),
-        new BigInteger("227"), new BigInteger("229"), new BigInteger("233"),
-        new BigInteger("239"), new BigInteger("241"), new BigInteger("251"),
-        new BigInteger("257"), new BigInteger("263"), new BigInteger("269"),
-        new BigInteger("271"), new BigInteger("277"), new BigInteger("281"),
-        new BigInteger("283"), new BigInteger("293"), new BigInteger("307"),
-        new BigInteger("311"), new BigInteger("313"), new BigInteger("317"),
-        new BigInteger("331"), new BigInteger("337"), new BigInteger("347")
-    };
+    /** Value of the rsa.primality system property selecting the Baillie-PSW test */
+    public final static String BPSW = "bpsw";
 
     /**
      * given a list of Strings split each of them in the middle
@@ -63,11 +42,26 @@ public class Utils {
      * @author Rafael M. Pestano - Oct 15, 2012 7:15:19 PM
      */
     public static String bigIntegerToString(List<BigInteger> list) {
-        StringBuilder plainText = new StringBuilder();
+        ByteArrayOutputStream plainText = new ByteArrayOutputStream();
         for (BigInteger bigInteger : list) {
-            plainText.append(new String(bigInteger.toByteArray()));
+            byte[] bytes = toBytes(bigInteger);
+            plainText.write(bytes, 0, bytes.length);
         }
-        return plainText.toString();
+        // decode once so characters split across two blocks stay intact
+        return new String(plainText.toByteArray());
+    }
+
+    /**
+     * @param bigInteger non negative message block
+     * @return message bytes of the block, without the sign byte
+     * {@link BigInteger#toByteArray()} adds when the top bit is set
+     */
+    public static byte[] toBytes(BigInteger bigInteger) {
+        byte[] bytes = bigInteger.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return bytes;
     }
 
     /**
@@ -112,14 +106,20 @@ public class Utils {
     }
 
     /**
+     * Odd moduli build a Montgomery context per call, the keys keep theirs
+     * across operations (see {@link RSAPublicKey} and {@link RSAPrivateKey})
      *
      * @param x
      * @param y
      * @param p
      * @return (x power y) module p
+     * @see Montgomery#modPow(BigInteger, BigInteger)
      */
     public static BigInteger powerMod(BigInteger x, BigInteger y, BigInteger p)
     {
+        if (p.testBit(0) && p.compareTo(BigInteger.ONE) == 1 && y.signum() >= 0)
+            return new Montgomery(p).modPow(x, y);
+
         BigInteger res = BigInteger.ONE;
 
         x = x.mod(p); // Update x if it is more than or equal to p
@@ -145,53 +145,31 @@ public class Utils {
      * @param a
      * @param b
      * @return GCD(a, b)
+     * @see ExtendedGcd#gcd(BigInteger, BigInteger)
      */
     public static BigInteger gcd(BigInteger a, BigInteger b)
     {
-        while (b.compareTo(BigInteger.ZERO) != 0)
-        {
-            BigInteger temp = b;
-            b = a.mod(b);
-            a = temp;
-        }
-        return a;
+        return ExtendedGcd.gcd(a, b);
     }
 
     /**
-     * Extended Euclidean Algorithm
+     * Extended Euclidean Algorithm, Lehmer's variant see {@link ExtendedGcd}
      * @param a > 0             ~ e
      * @param b > 0             ~ ø(n)
      * @return d
-     * Where e*d=1 mod ø(n)
+     * Where e*d=1 mod ø(n), 0 if a has no inverse modulo b
      */
     public static BigInteger gcdExtended(BigInteger a, BigInteger b)
     {
-        BigInteger y0 = new BigInteger("0");
-        BigInteger y1 = new BigInteger("1");
-        BigInteger r, q;
-        BigInteger y = BigInteger.ONE;
-
-        while (a.compareTo(BigInteger.ZERO) == 1)
-        {
-            r = b.mod(a);
-            if (r.compareTo(BigInteger.ZERO) == 0)
-                break;
-            q = b.divide(a);
-            y = y0.subtract(y1.multiply(q));
-            y0 = y1;
-            y1 = y;
-            b = a;
-            a = r;
-        }
-        if (a.compareTo(BigInteger.ONE) == 1)
+        BigInteger[] bezout = ExtendedGcd.gcdExtended(a, b);
+        if (!bezout[0].equals(BigInteger.ONE))
             return BigInteger.ZERO;
-        else
-            return y;
+        return bezout[1];
     }
-
     
     /**
      * Random a odd integer with n-bit-length
+     * Drawn from {@link RandomSource}, the top bit is masked off
      * @param Size
      * @return BigInteger
      */
@@ -199,49 +177,21 @@ public class Utils {
     {
         n = n / 8;
         if (n == 0) n = 1;
-        SecureRandom random = new SecureRandom();
-        byte bytes[] = new byte[n];
-        random.nextBytes(bytes);
-        while (true)
-        {
-            if (bytes[0] < 0)
-            {
-                random.nextBytes(bytes);
-                continue;
-            }
-            if (bytes[n - 1] % 2 == 0)
-            {
-                random.nextBytes(bytes);
-                continue;
-            }
-            break;
-        }
-        return new BigInteger(bytes);
+        return RandomSource.nextOdd(n);
     }
 
     /**
      * Generate a probably prime number with n-bit-length
+     *
+     * The first candidate of a fresh {@link PrimeCandidates} run, no small
+     * prime divides it
+     *
      * @param Size
      * @return BigInteger
      */
     public static BigInteger getLowLevelPrime(int n)
     {
-        BigInteger pc;
-        while (true)
-        {
-            pc = randomGeneration(n);
-            boolean flag = true;
-            for (BigInteger divisor:Utils.first_prime_list)
-            {
-                if ((pc.mod(divisor).compareTo(BigInteger.ZERO) == 0)
-                    && !(divisor.multiply(divisor).compareTo(pc) == 1))
-                {
-                    flag = false;
-                    break;
-                }
-            }
-            if (flag) return pc;
-        }
+        return new PrimeCandidates(n).next();
     }
 
     /**
@@ -250,45 +200,208 @@ public class Utils {
      */
     public static boolean trialComposite(BigInteger rt, BigInteger ec, BigInteger mrc, BigInteger max)
     {
-        BigInteger One = BigInteger.ONE;
-        if (powerMod(rt, ec, mrc).compareTo(One) == 0)
+        return trialComposite(rt, ec, new Montgomery(mrc), max);
+    }
+
+    /**
+     * Same as {@link #trialComposite(BigInteger, BigInteger, BigInteger, BigInteger)}
+     * with the Montgomery context of mrc built once by the caller
+     *
+     * One exponentiation rt^ec followed by at most max - 1 squarings,
+     * where mrc - 1 = 2^max * ec
+     *
+     * @return <code>true</code> if rt is a witness that mrc is composite
+     */
+    public static boolean trialComposite(BigInteger rt, BigInteger ec, Montgomery mrc, BigInteger max)
+    {
+        BigInteger n = mrc.getModulus();
+        BigInteger minusOne = n.subtract(BigInteger.ONE);
+        BigInteger x = mrc.modPow(rt, ec);
+        if (x.equals(BigInteger.ONE) || x.equals(minusOne))
             return false;
-        for (BigInteger i = BigInteger.ZERO; i.compareTo(max) == -1; i = i.add(One))
+        for (int i = 1; i < max.intValue(); i++)
         {
-            if (powerMod(rt, power(new BigInteger("2"), i).multiply(ec), mrc).compareTo(mrc.subtract(One)) == 0)
+            x = x.multiply(x).mod(n);
+            if (x.equals(minusOne))
                 return false;
+            if (x.equals(BigInteger.ONE))
+                return true; // non trivial square root of 1
         }
         return true;
     }
 
+    /**
+     * Number of Miller Rabin rounds for a random candidate of the given
+     * bit length, following FIPS 186-4 appendix C.3 for the sizes RSA primes
+     * are generated at, and erring on the side of more rounds below
+     *
+     * @param bitLength
+     * @return number of rounds with random bases
+     */
+    public static int millerRabinRounds(int bitLength)
+    {
+        if (bitLength >= 1536) return 4;
+        if (bitLength >= 1024) return 5;
+        if (bitLength >= 512) return 7;
+        if (bitLength >= 256) return 12;
+        if (bitLength >= 128) return 20;
+        return 40;
+    }
+
     /**
      * Check if a probably prime number is a prime number
+     *
+     * Runs {@link #millerRabinRounds(int)} rounds with random bases, or the
+     * Baillie-PSW test (Miller Rabin to base 2 and a strong Lucas test) when
+     * the system property rsa.primality is set to bpsw
+     *
      * @param number
      * @param Size (bit-length)
      * @return BigInteger
      */
     public static boolean isMillerRabinPassed(BigInteger mrc, int size)
     {
-        BigInteger maxDivisionsByTwo = BigInteger.ZERO;
-        BigInteger ec = mrc.subtract(BigInteger.ONE);
-        while (ec.and(BigInteger.ONE).compareTo(BigInteger.ZERO) == 0)
+        return isMillerRabinPassed(mrc, size, () -> false);
+    }
+
+    /**
+     * {@link #isMillerRabinPassed(BigInteger, int)} that gives up when stop
+     * turns true, checked before every round
+     *
+     * @param mrc
+     * @param size
+     * @param stop
+     * @return <code>false</code> if mrc is composite or the test was stopped
+     */
+    public static boolean isMillerRabinPassed(BigInteger mrc, int size, BooleanSupplier stop)
+    {
+        if (mrc.compareTo(BigInteger.valueOf(3)) <= 0)
+            return mrc.compareTo(BigInteger.ONE) > 0;
+        if (!mrc.testBit(0))
+            return false;
+        BigInteger minusOne = mrc.subtract(BigInteger.ONE);
+        int s = minusOne.getLowestSetBit();
+        BigInteger ec = minusOne.shiftRight(s);
+        BigInteger maxDivisionsByTwo = BigInteger.valueOf(s);
+
+        Montgomery mont = new Montgomery(mrc);
+        if (BPSW.equals(System.getProperty("rsa.primality")))
         {
-            ec = ec.shiftRight(1);
-            maxDivisionsByTwo = maxDivisionsByTwo.add(BigInteger.ONE);
+            return !trialComposite(BigInteger.TWO, ec, mont, maxDivisionsByTwo)
+                && isStrongLucasProbablePrime(mrc);
         }
-        if (power(new BigInteger("2"), maxDivisionsByTwo).multiply(ec).compareTo(mrc.subtract(BigInteger.ONE)) != 0)
-            return false;
-    
-        
-        for (int i = 0; i < 20; i++)
+        int rounds = millerRabinRounds(mrc.bitLength());
+        BigInteger maxBase = mrc.subtract(BigInteger.TWO);
+        for (int i = 0; i < rounds; i++)
         {
-            BigInteger round_tester = randomGeneration(size / 2);
-            if (trialComposite(round_tester, ec, mrc, maxDivisionsByTwo))
+            if (stop.getAsBoolean())
+                return false;
+            BigInteger round_tester = RandomSource.nextBetween(BigInteger.TWO, maxBase);
+            if (trialComposite(round_tester, ec, mont, maxDivisionsByTwo))
                 return false;
         }
         return true;
     }
 
+    /**
+     * Strong Lucas probable prime test with the parameters of Selfridge's
+     * method A: D is the first of 5, -7, 9, -11, ... with Jacobi(D/n) = -1,
+     * P = 1 and Q = (1 - D) / 4
+     *
+     * @param n - odd, greater than 3
+     * @return <code>false</code> if n is certainly composite
+     */
+    public static boolean isStrongLucasProbablePrime(BigInteger n)
+    {
+        long d = 5;
+        int tries = 0;
+        while (true)
+        {
+            int j = jacobi(BigInteger.valueOf(d), n);
+            if (j == -1)
+                break;
+            if (j == 0 && BigInteger.valueOf(Math.abs(d)).compareTo(n) != 0)
+                return false;
+            // a perfect square never yields Jacobi -1
+            if (++tries == 20 && n.sqrt().pow(2).equals(n))
+                return false;
+            d = d > 0 ? -d - 2 : -d + 2;
+        }
+        BigInteger D = BigInteger.valueOf(d);
+        BigInteger Q = BigInteger.valueOf((1 - d) / 4);
+
+        BigInteger nPlusOne = n.add(BigInteger.ONE);
+        int s = nPlusOne.getLowestSetBit();
+        BigInteger k = nPlusOne.shiftRight(s);
+
+        // U_1 = 1, V_1 = P = 1, Q^1
+        BigInteger u = BigInteger.ONE;
+        BigInteger v = BigInteger.ONE;
+        BigInteger qk = Q.mod(n);
+        for (int i = k.bitLength() - 2; i >= 0; i--)
+        {
+            // index doubling
+            u = u.multiply(v).mod(n);
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            qk = qk.multiply(qk).mod(n);
+            if (k.testBit(i))
+            {
+                // index + 1, with P = 1
+                BigInteger nextU = halve(u.add(v), n);
+                v = halve(D.multiply(u).add(v), n);
+                u = nextU;
+                qk = qk.multiply(Q).mod(n);
+            }
+        }
+        if (u.signum() == 0 || v.signum() == 0)
+            return true;
+        for (int r = 1; r < s; r++)
+        {
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            if (v.signum() == 0)
+                return true;
+            qk = qk.multiply(qk).mod(n);
+        }
+        return false;
+    }
+
+    /**
+     * @return x / 2 mod n for odd n
+     */
+    private static BigInteger halve(BigInteger x, BigInteger n)
+    {
+        x = x.mod(n);
+        if (x.testBit(0))
+            x = x.add(n);
+        return x.shiftRight(1);
+    }
+
+    /**
+     * @param a
+     * @param n - odd, positive
+     * @return Jacobi symbol (a/n)
+     */
+    public static int jacobi(BigInteger a, BigInteger n)
+    {
+        a = a.mod(n);
+        int t = 1;
+        while (a.signum() != 0)
+        {
+            int zeros = a.getLowestSetBit();
+            a = a.shiftRight(zeros);
+            int r = n.intValue() & 7;
+            if ((zeros & 1) == 1 && (r == 3 || r == 5))
+                t = -t;
+            BigInteger temp = a;
+            a = n;
+            n = temp;
+            if ((a.intValue() & 3) == 3 && (n.intValue() & 3) == 3)
+                t = -t;
+            a = a.mod(n);
+        }
+        return n.equals(BigInteger.ONE) ? t : 0;
+    }
+
     /**
      * Random a n-bit-length-prime-number
      * Method: random probably prime number then check with Miller Rabin method
@@ -298,13 +411,19 @@ public class Utils {
      */
     public static BigInteger primeGeneration(int n)
     {
+        long start = Metrics.start();
+        long rejected = 0;
+        PrimeCandidates candidates = new PrimeCandidates(n); // one sieve run across rejections
         while (true)
         {
-            BigInteger prime_candidate = getLowLevelPrime(n);
+            BigInteger prime_candidate = candidates.next();
             if (!isMillerRabinPassed(prime_candidate, n))
+            {
+                rejected++;
                 continue;
-            else
-                return prime_candidate;
+            }
+            Metrics.stop(Metrics.Operation.PRIME_GENERATION, start, 0, rejected);
+            return prime_candidate;
         }
     }
 
@@ -315,30 +434,37 @@ public class Utils {
      */
     public static BigInteger eGeneration(BigInteger phi)
     {
-        BigInteger temp = new BigInteger("3");
-
-        while (true)
+        // gcd(phi, e) = gcd(e, phi mod e), all in long arithmetic
+        long temp = 3;
+        while (ExtendedGcd.gcd(temp, phi.mod(BigInteger.valueOf(temp)).longValue()) != 1)
         {
-            BigInteger gcdValue;
-            gcdValue = gcd(phi, temp);
-            if (gcdValue.compareTo(BigInteger.ONE) == 0)
-            {
-                break;
-            }
-            temp = temp.add(new BigInteger("2"));
+            temp += 2;
         }
-        return temp;
+        return BigInteger.valueOf(temp);
     }
 
     /**
      * Calculate d by using {@link #gcdExtended(BigInteger, BigInteger)}
      * 
+     * A small e (up to 31 bits, such as 65537) takes a shortcut:
+     * e * d = 1 + k * phi with k = -phi^-1 mod e, so k is found with long
+     * arithmetic modulo e and d = (1 + k * phi) / e is one exact division
+     * 
      * @param e
      * @param phi
-     * @return d
+     * @return d, 0 if e has no inverse modulo phi
      */
     public static BigInteger calculateD(BigInteger e, BigInteger phi)
     {
+        if (e.signum() > 0 && e.bitLength() <= 31 && e.compareTo(phi) < 0)
+        {
+            long le = e.longValue();
+            long inverse = ExtendedGcd.inverse(phi.mod(e).longValue(), le);
+            if (inverse < 0)
+                return BigInteger.ZERO;
+            long k = (le - inverse) % le;
+            return phi.multiply(BigInteger.valueOf(k)).add(BigInteger.ONE).divide(e);
+        }
         BigInteger ans;
         ans = gcdExtended(e, phi);
         if (ans.compareTo(BigInteger.ZERO) == -1)
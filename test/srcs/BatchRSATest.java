@@ -0,0 +1,68 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link BatchRSA} against one private exponentiation per message:
+ * full batches, a stream mixing the exponents in uneven numbers, a zero
+ * ciphertext that has no inverse and leaves the product tree, and the empty
+ * batch
+ */
+public class BatchRSATest {
+
+    public static void main(String[] args)
+    {
+        RSA rsa = new KeyGenerator(1).generate(1024);
+        RSAPrivateKey privateKey = RSAPrivateKey.fromList(rsa.getPrivateKey());
+        BigInteger n = privateKey.getModulus();
+        BatchRSA batch = new BatchRSA(privateKey, BatchRSA.exponents(privateKey, 8));
+        Random random = new Random(11);
+
+        for (int size = 1; size <= batch.size(); size++) {
+            List<BigInteger> messages = new ArrayList<BigInteger>();
+            List<BigInteger> ciphertexts = new ArrayList<BigInteger>();
+            for (int key = 0; key < size; key++) {
+                BigInteger message = new BigInteger(n.bitLength() - 1, random);
+                messages.add(message);
+                ciphertexts.add(message.modPow(batch.getExponent(key), n));
+            }
+            check("batch of " + size, messages, batch.decrypt(ciphertexts));
+        }
+
+        int count = 100;
+        int[] keys = new int[count];
+        List<BigInteger> messages = new ArrayList<BigInteger>();
+        List<BigInteger> ciphertexts = new ArrayList<BigInteger>();
+        for (int i = 0; i < count; i++) {
+            keys[i] = random.nextInt(3) == 0 ? 0 : random.nextInt(batch.size());
+            BigInteger message = i == count / 2 ? BigInteger.ZERO : new BigInteger(n.bitLength() - 1, random);
+            messages.add(message);
+            ciphertexts.add(message.modPow(batch.getExponent(keys[i]), n));
+        }
+        check("mixed stream", messages, batch.decrypt(ciphertexts, keys));
+
+        List<BigInteger> zero = new ArrayList<BigInteger>();
+        for (int key = 0; key < batch.size(); key++) {
+            zero.add(key == 3 ? BigInteger.ZERO : BigInteger.valueOf(key + 2).modPow(batch.getExponent(key), n));
+        }
+        List<BigInteger> expected = new ArrayList<BigInteger>();
+        for (int key = 0; key < batch.size(); key++) {
+            expected.add(key == 3 ? BigInteger.ZERO : BigInteger.valueOf(key + 2));
+        }
+        check("zero ciphertext", expected, batch.decrypt(zero));
+
+        check("empty batch", new ArrayList<BigInteger>(), batch.decrypt(new ArrayList<BigInteger>()));
+        check("empty stream", new ArrayList<BigInteger>(), batch.decrypt(new ArrayList<BigInteger>(), new int[0]));
+        System.out.println("BatchRSATest passed");
+    }
+
+    private static void check(String operation, List<BigInteger> expected, List<BigInteger> actual)
+    {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(operation + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package srcs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round trips of the decimal file and stream format, with messages whose
+ * blocks start with zero bytes or hold nothing but zeros
+ */
+public class FramedBlocksTest {
+
+    public static void main(String[] args) throws IOException
+    {
+        Random random = new Random(42);
+        RSA rsa = new RSA(BigInteger.probablePrime(512, random), BigInteger.probablePrime(512, random),
+            BigInteger.valueOf(65537));
+        int blockBytes = rsa.getMaxBlockBytes();
+        Path dir = Files.createTempDirectory("framed");
+        try {
+            for (int size : new int[] { 0, 1, blockBytes - 1, blockBytes, blockBytes + 1,
+                3 * blockBytes, 1000, 100000 }) {
+                byte[] zeros = new byte[size];
+                roundTrip(rsa, dir, zeros);
+
+                byte[] message = new byte[size];
+                random.nextBytes(message);
+                for (int i = 0; i < size; i += blockBytes) {
+                    message[i] = 0; // every block starts with a zero byte
+                    if (i + 1 < size) {
+                        message[i + 1] = 0;
+                    }
+                }
+                roundTrip(rsa, dir, message);
+            }
+            legacyFormat(rsa, dir);
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+        System.out.println("FramedBlocksTest passed");
+    }
+
+    private static void roundTrip(RSA rsa, Path dir, byte[] message) throws IOException
+    {
+        Path plain = dir.resolve("plain");
+        Path blocks = dir.resolve("blocks");
+        Path result = dir.resolve("result");
+        Files.write(plain, message);
+
+        rsa.encryptFile(plain.toString(), blocks.toString(), false);
+        rsa.decryptFile(blocks.toString(), result.toString());
+        check("decryptFile", message, Files.readAllBytes(result));
+
+        rsa.signFile(plain.toString(), blocks.toString(), false);
+        rsa.verifyFile(blocks.toString(), result.toString());
+        check("verifyFile", message, Files.readAllBytes(result));
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        rsa.encryptStream(new ByteArrayInputStream(message), encrypted);
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        rsa.decryptStream(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+        check("decryptStream", message, decrypted.toByteArray());
+
+        ByteArrayOutputStream signed = new ByteArrayOutputStream();
+        rsa.signStream(new ByteArrayInputStream(message), signed);
+        ByteArrayOutputStream verified = new ByteArrayOutputStream();
+        rsa.verifyStream(new ByteArrayInputStream(signed.toByteArray()), verified);
+        check("verifyStream", message, verified.toByteArray());
+    }
+
+    /**
+     * Files written before the framed format, one decimal block per line,
+     * still decode block by block
+     */
+    private static void legacyFormat(RSA rsa, Path dir) throws IOException
+    {
+        byte[] message = "first line\nsecond line é\n".getBytes(StandardCharsets.UTF_8);
+        StringBuilder lines = new StringBuilder();
+        for (int from = 0; from < message.length; from += 10) {
+            byte[] block = Arrays.copyOfRange(message, from, Math.min(from + 10, message.length));
+            lines.append(rsa.encrypt(new BigInteger(1, block))).append('\n');
+        }
+        Path blocks = dir.resolve("legacy");
+        Path result = dir.resolve("legacy.dec");
+        Files.write(blocks, lines.toString().getBytes(StandardCharsets.UTF_8));
+        rsa.decryptFile(blocks.toString(), result.toString());
+        check("legacy decryptFile", message, Files.readAllBytes(result));
+    }
+
+    private static void check(String operation, byte[] expected, byte[] actual)
+    {
+        if (!Arrays.equals(expected, actual)) {
+            throw new AssertionError(operation + " of " + expected.length + " bytes returned "
+                + actual.length + " different bytes");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package srcs;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Checks the interleaved exponentiation of {@link Montgomery#modPow(BigInteger[], SlidingWindow)}
+ * against BigInteger.modPow: moduli with odd and even limb counts, moduli
+ * close to a power of two where the final subtraction is taken most often,
+ * bases 0, 1, n - 1 and above n, and batches that leave lanes unused
+ */
+public class MontgomeryLanesTest {
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(7);
+        int checked = 0;
+        for (int bits : new int[] { 17, 32, 33, 64, 95, 96, 97, 160, 511, 512, 1023, 1024, 2047, 2048 }) {
+            BigInteger[] moduli = {
+                BigInteger.probablePrime(bits, random),
+                new BigInteger(bits, random).setBit(bits - 1).setBit(0),
+                BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE), // every limb all ones
+                BigInteger.ONE.shiftLeft(bits - 1).add(BigInteger.ONE)
+            };
+            for (BigInteger n : moduli) {
+                Montgomery context = new Montgomery(n);
+                BigInteger[] exponents = {
+                    BigInteger.ONE, BigInteger.TWO, BigInteger.valueOf(3),
+                    KeyGenerator.DEFAULT_PUBLIC_EXPONENT,
+                    n.subtract(BigInteger.ONE),
+                    new BigInteger(bits, random)
+                };
+                for (BigInteger exponent : exponents) {
+                    SlidingWindow window = new SlidingWindow(exponent);
+                    for (int count = 1; count <= 2 * Montgomery.LANES + 1; count++) {
+                        BigInteger[] bases = bases(n, count, random);
+                        BigInteger[] result = context.modPow(bases, window);
+                        for (int i = 0; i < count; i++) {
+                            BigInteger expected = bases[i].modPow(exponent, n);
+                            if (!expected.equals(result[i])) {
+                                throw new AssertionError("n = " + n + ", x = " + bases[i] + ", y = " + exponent
+                                    + ": expected " + expected + ", got " + result[i]);
+                            }
+                            checked++;
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("MontgomeryLanesTest passed, " + checked + " exponentiations");
+    }
+
+    /**
+     * Edge bases first, random ones below and above n after them
+     */
+    private static BigInteger[] bases(BigInteger n, int count, Random random)
+    {
+        BigInteger[] edges = {
+            BigInteger.ZERO, BigInteger.ONE, n.subtract(BigInteger.ONE),
+            n.subtract(BigInteger.TWO), n, n.add(BigInteger.ONE)
+        };
+        BigInteger[] bases = new BigInteger[count];
+        for (int i = 0; i < count; i++) {
+            int pick = random.nextInt(edges.length + 2);
+            if (pick < edges.length) {
+                bases[i] = edges[pick];
+            } else if (pick == edges.length) {
+                bases[i] = new BigInteger(n.bitLength(), random).mod(n);
+            } else {
+                bases[i] = new BigInteger(n.bitLength() + 8, random);
+            }
+        }
+        return bases;
+    }
+}